@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.bootstrap;
 import net.lenni0451.classtransform.TransformerManager;
 import net.raphimc.javadowngrader.bootstrap.util.FileSystemUtil;
 import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
 import net.raphimc.javadowngrader.impl.classtransform.util.ClassNameUtil;
 import net.raphimc.javadowngrader.runtime.RuntimeRoot;
 import net.raphimc.javadowngrader.util.Constants;
@@ -63,7 +64,7 @@ public class AgentMain {
 
         instrumentation.addTransformer(new RuntimeClassesAdderTransformer(runtimeClasses));
         final TransformerManager transformerManager = new TransformerManager(new InstrumentationClassProvider(instrumentation));
-        transformerManager.addBytecodeTransformer(new JavaDowngraderTransformer(transformerManager));
+        transformerManager.addBytecodeTransformer(JavaDowngraderTransformer.builder(transformerManager).cache(DowngradeCache.fromSystemProperties()).build());
         transformerManager.hookInstrumentation(instrumentation);
 
         JavaVersionSpoofer.modifyProperties();
@@ -24,8 +24,10 @@ import net.lenni0451.classtransform.utils.tree.BasicClassProvider;
 import net.lenni0451.reflect.ClassLoaders;
 import net.lenni0451.reflect.Methods;
 import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
@@ -33,7 +35,7 @@ import java.util.jar.JarFile;
 
 public class Main {
 
-    public static void main(String[] args) throws ClassNotFoundException {
+    public static void main(String[] args) throws ClassNotFoundException, IOException {
         if (args.length < 1) {
             final String jarPath = Main.class.getProtectionDomain().getCodeSource().getLocation().getPath();
             final String jarName = jarPath.substring(jarPath.lastIndexOf('/') + 1);
@@ -67,7 +69,7 @@ public class Main {
         args = Arrays.copyOfRange(args, 1, args.length);
 
         final TransformerManager transformerManager = new TransformerManager(new LazyFileClassProvider(Collections.singletonList(jarFile), new BasicClassProvider()));
-        transformerManager.addBytecodeTransformer(new JavaDowngraderTransformer(transformerManager));
+        transformerManager.addBytecodeTransformer(JavaDowngraderTransformer.builder(transformerManager).cache(DowngradeCache.fromSystemProperties()).build());
         final InjectionClassLoader injectionClassLoader = new InjectionClassLoader(transformerManager, urls);
         Thread.currentThread().setContextClassLoader(injectionClassLoader);
         Methods.invoke(null, Methods.getDeclaredMethod(injectionClassLoader.loadClass(mainClass), "main", String[].class), (Object) args);
@@ -23,9 +23,12 @@ import net.lenni0451.classtransform.additionalclassprovider.PathClassProvider;
 import net.lenni0451.classtransform.utils.log.impl.SysoutLogger;
 import net.lenni0451.classtransform.utils.tree.BasicClassProvider;
 import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
+import net.raphimc.javadowngrader.impl.classtransform.util.OrderedZipWriter;
 import net.raphimc.javadowngrader.runtime.RuntimeRoot;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.file.RelativePath;
 import org.gradle.api.internal.file.copy.CopyAction;
@@ -35,11 +38,13 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.WorkResults;
 import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.objectweb.asm.Opcodes;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -50,21 +55,26 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 public abstract class DowngradeJarTask extends AbstractArchiveTask {
+    private static final int MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+
     @InputFiles
     public abstract ConfigurableFileCollection getCompileClassPath();
 
@@ -74,12 +84,23 @@ public abstract class DowngradeJarTask extends AbstractArchiveTask {
     @Input
     public abstract Property<Boolean> getCopyRuntimeClasses();
 
+    @Input
+    public abstract Property<Integer> getCompressionLevel();
+
+    @Internal
+    public abstract DirectoryProperty getCacheDirectory();
+
+    @Internal
+    public abstract Property<Long> getCacheSize();
+
     public DowngradeJarTask() {
         getArchiveClassifier().convention("-downgraded");
         getArchiveExtension().convention("jar");
         getDestinationDirectory().set(getProject().getLayout().getBuildDirectory().dir("libs"));
         getTargetVersion().convention(Opcodes.V1_8);
         getCopyRuntimeClasses().convention(true);
+        getCompressionLevel().convention(Deflater.DEFAULT_COMPRESSION);
+        getCacheSize().convention(DowngradeCache.DEFAULT_MAX_SIZE / (1024 * 1024));
     }
 
     @Override
@@ -120,47 +141,65 @@ public abstract class DowngradeJarTask extends AbstractArchiveTask {
 
             doneProcessing.set(true);
 
-            final Collection<String> runtimeDeps = new LinkedHashSet<>();
-            final TransformerManager transformerManager = new TransformerManager(
-                    new FileCopyDetailsClassProvider(fileDetails, rawData)
-            );
-            transformerManager.addBytecodeTransformer(
-                    JavaDowngraderTransformer.builder(transformerManager)
-                            .targetVersion(getTargetVersion().get())
-                            .depCollector(runtimeDeps::add)
-                            .build()
-            );
-
-            try (OutputStream rawOut = Files.newOutputStream(this.getArchiveFile().get().getAsFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-                    ZipOutputStream zipOut = new ZipOutputStream(rawOut)) {
+            final long time = System.currentTimeMillis();
+            final byte[] empty = new byte[0];
+            try (DowngradeCache cache = getCacheDirectory().isPresent() ? new DowngradeCache(getCacheDirectory().get().getAsFile().toPath(), getCacheSize().get() * 1024 * 1024) : null;
+                    OutputStream rawOut = new BufferedOutputStream(Files.newOutputStream(this.getArchiveFile().get().getAsFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+                    OrderedZipWriter zipOut = new OrderedZipWriter(rawOut, getCompressionLevel().get(), MAX_BUFFERED_BYTES)) {
+                final Collection<String> runtimeDeps = new ConcurrentSkipListSet<>();
+                final TransformerManager transformerManager = new TransformerManager(
+                        new FileCopyDetailsClassProvider(fileDetails, rawData)
+                );
+                transformerManager.addBytecodeTransformer(
+                        JavaDowngraderTransformer.builder(transformerManager)
+                                .targetVersion(getTargetVersion().get())
+                                .depCollector(runtimeDeps::add)
+                                .cache(cache)
+                                .build()
+                );
+
+                // Classes are downgraded and compressed in parallel, the writer keeps the original entry order
+                final List<CompletableFuture<Void>> futures = new ArrayList<>();
                 for (Map.Entry<String, FileCopyDetailsInternal> fileMapEntry : fileDetails.entrySet()) {
                     String path = fileMapEntry.getKey();
                     FileCopyDetailsInternal file = fileMapEntry.getValue();
 
                     if (file.isDirectory() && (file.isIncludeEmptyDirs() || directories.contains(path))) {
-                        final ZipEntry entry = new ZipEntry(path + "/");
-                        zipOut.putNextEntry(entry);
-                        zipOut.closeEntry();
-                    } else {
-                        final ZipEntry entry = new ZipEntry(path);
-                        zipOut.putNextEntry(entry);
+                        zipOut.reserve(0).write(path + "/", time, empty);
+                    } else if (!file.isDirectory()) {
+                        final byte[] data = rawData.get(path);
+                        final OrderedZipWriter.Slot slot = zipOut.reserve(data.length);
+                        futures.add(CompletableFuture.runAsync(() -> {
+                            try {
+                                if (!path.endsWith(".class") || path.contains("META-INF/versions/")) {
+                                    slot.write(path, time, data);
+                                    return;
+                                }
 
-                        if (!path.endsWith(".class") || path.contains("META-INF/versions/")) {
-                            zipOut.write(rawData.get(path));
-                            zipOut.closeEntry();
-                            continue;
-                        }
+                                final byte[] result;
+                                try {
+                                    final String className = path.substring(0, path.length() - 6).replace('/', '.');
+                                    result = transformerManager.transform(className, data);
+                                } catch (Throwable e2) {
+                                    throw new RuntimeException("Failed to transform '" + path + "'", e2);
+                                }
 
-                        final byte[] result;
-                        try {
-                            final String className = path.substring(0, path.length() - 6).replace('/', '.');
-                            result = transformerManager.transform(className, rawData.get(path));
-                        } catch (Throwable e2) {
-                            throw new RuntimeException("Failed to transform '" + path + "'", e2);
+                                slot.write(path, time, result != null ? result : data);
+                            } catch (Throwable t) {
+                                zipOut.fail(t);
+                                throw t;
+                            }
+                        }));
+                    }
+                }
+                for (CompletableFuture<Void> future : futures) {
+                    try {
+                        future.join();
+                    } catch (CompletionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
                         }
-
-                        zipOut.write(result);
-                        zipOut.closeEntry();
+                        throw e;
                     }
                 }
 
@@ -184,22 +223,21 @@ public abstract class DowngradeJarTask extends AbstractArchiveTask {
                             }
 
                             while (!directoryQueue.isEmpty()) {
-                                final ZipEntry entry = new ZipEntry(directoryQueue.poll() + "/");
-                                zipOut.putNextEntry(entry);
-                                zipOut.closeEntry();
+                                zipOut.reserve(0).write(directoryQueue.poll() + "/", time, empty);
                             }
 
-                            zipOut.putNextEntry(new ZipEntry(classPath));
+                            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                             byte[] buffer = new byte[4096];
                             for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
                                 if (read != 0) {
-                                    zipOut.write(buffer, 0, read);
+                                    baos.write(buffer, 0, read);
                                 }
                             }
-                            zipOut.closeEntry();
+                            zipOut.reserve(baos.size()).write(classPath, time, baos.toByteArray());
                         }
                     }
                 }
+                zipOut.finish();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
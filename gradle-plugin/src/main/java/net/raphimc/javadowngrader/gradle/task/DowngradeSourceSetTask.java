@@ -22,11 +22,14 @@ import net.lenni0451.classtransform.additionalclassprovider.LazyFileClassProvide
 import net.lenni0451.classtransform.additionalclassprovider.PathClassProvider;
 import net.lenni0451.classtransform.utils.tree.BasicClassProvider;
 import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
 import net.raphimc.javadowngrader.impl.classtransform.util.ClassNameUtil;
 import net.raphimc.javadowngrader.runtime.RuntimeRoot;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.TaskAction;
 import org.objectweb.asm.Opcodes;
@@ -52,67 +55,81 @@ public abstract class DowngradeSourceSetTask extends DefaultTask {
     @Input
     public abstract Property<Boolean> getCopyRuntimeClasses();
 
+    @Internal
+    public abstract DirectoryProperty getCacheDirectory();
+
+    @Internal
+    public abstract Property<Long> getCacheSize();
+
     public DowngradeSourceSetTask() {
         getTargetVersion().convention(Opcodes.V1_8);
         getCopyRuntimeClasses().convention(true);
+        getCacheSize().convention(DowngradeCache.DEFAULT_MAX_SIZE / (1024 * 1024));
     }
 
     @TaskAction
     public void run() throws IOException {
-        for (File classesDir : getSourceSet().get().getOutput().getClassesDirs()) {
-            System.out.println("Downgrading source set: " + this.getProject().getProjectDir().toPath().relativize(classesDir.toPath()));
-            final Path inRoot = classesDir.toPath();
+        try (DowngradeCache cache = getCacheDirectory().isPresent() ? new DowngradeCache(getCacheDirectory().get().getAsFile().toPath(), getCacheSize().get() * 1024 * 1024) : null) {
+            for (File classesDir : getSourceSet().get().getOutput().getClassesDirs()) {
+                this.downgrade(classesDir, cache);
+            }
+        }
+    }
+
+    private void downgrade(final File classesDir, final DowngradeCache cache) throws IOException {
+        System.out.println("Downgrading source set: " + this.getProject().getProjectDir().toPath().relativize(classesDir.toPath()));
+        final Path inRoot = classesDir.toPath();
 
-            final Collection<String> runtimeDeps = new HashSet<>();
-            final TransformerManager transformerManager = new TransformerManager(
-                    new PathClassProvider(inRoot, new LazyFileClassProvider(getSourceSet().get().getCompileClasspath().getFiles(), new BasicClassProvider()))
-            );
-            transformerManager.addBytecodeTransformer(
-                    JavaDowngraderTransformer.builder(transformerManager)
-                            .targetVersion(getTargetVersion().get())
-                            .classFilter(c -> Files.isRegularFile(inRoot.resolve(ClassNameUtil.toClassFilename(c))))
-                            .depCollector(runtimeDeps::add)
-                            .build()
-            );
+        final Collection<String> runtimeDeps = new HashSet<>();
+        final TransformerManager transformerManager = new TransformerManager(
+                new PathClassProvider(inRoot, new LazyFileClassProvider(getSourceSet().get().getCompileClasspath().getFiles(), new BasicClassProvider()))
+        );
+        transformerManager.addBytecodeTransformer(
+                JavaDowngraderTransformer.builder(transformerManager)
+                        .targetVersion(getTargetVersion().get())
+                        .classFilter(c -> Files.isRegularFile(inRoot.resolve(ClassNameUtil.toClassFilename(c))))
+                        .depCollector(runtimeDeps::add)
+                        .cache(cache)
+                        .build()
+        );
 
-            // Downgrade classes
-            try (Stream<Path> stream = Files.walk(inRoot)) {
-                stream.forEach(path -> {
+        // Downgrade classes
+        try (Stream<Path> stream = Files.walk(inRoot)) {
+            stream.forEach(path -> {
+                try {
+                    final String relative = ClassNameUtil.slashName(inRoot.relativize(path));
+                    if (!relative.endsWith(".class")) return;
+                    final String className = ClassNameUtil.toClassName(relative);
+                    final byte[] bytecode = Files.readAllBytes(path);
+                    final byte[] result;
                     try {
-                        final String relative = ClassNameUtil.slashName(inRoot.relativize(path));
-                        if (!relative.endsWith(".class")) return;
-                        final String className = ClassNameUtil.toClassName(relative);
-                        final byte[] bytecode = Files.readAllBytes(path);
-                        final byte[] result;
-                        try {
-                            result = transformerManager.transform(className, bytecode);
-                        } catch (Throwable e) {
-                            throw new RuntimeException("Failed to transform " + className, e);
-                        }
-                        if (result != null) {
-                            Files.write(path, result);
-                        }
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
+                        result = transformerManager.transform(className, bytecode);
+                    } catch (Throwable e) {
+                        throw new RuntimeException("Failed to transform " + className, e);
                     }
-                });
-            }
+                    if (result != null) {
+                        Files.write(path, result);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
 
-            // Copy runtime classes
-            if (getCopyRuntimeClasses().get()) {
-                for (final String runtimeDep : runtimeDeps) {
-                    final String classPath = runtimeDep.concat(".class");
-                    try (InputStream is = RuntimeRoot.class.getResourceAsStream("/" + classPath)) {
-                        if (is == null) {
-                            throw new IllegalStateException("Missing runtime class " + runtimeDep);
-                        }
-                        final Path dest = inRoot.resolve(classPath);
-                        final Path parent = dest.getParent();
-                        if (parent != null) {
-                            Files.createDirectories(parent);
-                        }
-                        Files.copy(is, dest, StandardCopyOption.REPLACE_EXISTING);
+        // Copy runtime classes
+        if (getCopyRuntimeClasses().get()) {
+            for (final String runtimeDep : runtimeDeps) {
+                final String classPath = runtimeDep.concat(".class");
+                try (InputStream is = RuntimeRoot.class.getResourceAsStream("/" + classPath)) {
+                    if (is == null) {
+                        throw new IllegalStateException("Missing runtime class " + runtimeDep);
+                    }
+                    final Path dest = inRoot.resolve(classPath);
+                    final Path parent = dest.getParent();
+                    if (parent != null) {
+                        Files.createDirectories(parent);
                     }
+                    Files.copy(is, dest, StandardCopyOption.REPLACE_EXISTING);
                 }
             }
         }
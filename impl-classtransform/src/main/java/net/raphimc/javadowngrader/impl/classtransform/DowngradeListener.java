@@ -0,0 +1,37 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform;
+
+import net.raphimc.javadowngrader.impl.classtransform.util.CommonSuperClassResolver;
+
+import java.util.List;
+
+/**
+ * This is called after a class was downgraded or taken from the cache.
+ */
+@FunctionalInterface
+public interface DowngradeListener {
+
+    /**
+     * @param className   The name of the downgraded class
+     * @param runtimeDeps The runtime dependencies of the class
+     * @param resolutions The common super classes resolved for the class, as recorded by {@link CommonSuperClassResolver}
+     */
+    void onDowngrade(String className, List<String> runtimeDeps, List<String> resolutions);
+
+}
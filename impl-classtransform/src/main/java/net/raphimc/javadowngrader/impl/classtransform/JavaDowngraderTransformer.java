@@ -22,10 +22,19 @@ import net.lenni0451.classtransform.transformer.IBytecodeTransformer;
 import net.lenni0451.classtransform.utils.ASMUtils;
 import net.raphimc.javadowngrader.JavaDowngrader;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
+import net.raphimc.javadowngrader.impl.classtransform.util.ClassTreeWriter;
+import net.raphimc.javadowngrader.impl.classtransform.util.CommonSuperClassResolver;
+import net.raphimc.javadowngrader.transformer.DowngradePlan;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
+import net.raphimc.javadowngrader.transformer.StreamingDowngrade;
+import net.raphimc.javadowngrader.util.ASMUtil;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Predicate;
 
 public class JavaDowngraderTransformer implements IBytecodeTransformer {
@@ -44,6 +53,8 @@ public class JavaDowngraderTransformer implements IBytecodeTransformer {
     private final int targetVersion;
     private final Predicate<String> classFilter;
     private final RuntimeDepCollector depCollector;
+    private final DowngradeCache cache;
+    private final DowngradeListener listener;
 
     public JavaDowngraderTransformer(final TransformerManager transformerManager) {
         this(transformerManager, NATIVE_CLASS_VERSION);
@@ -60,19 +71,23 @@ public class JavaDowngraderTransformer implements IBytecodeTransformer {
 
     @Deprecated
     public JavaDowngraderTransformer(final TransformerManager transformerManager, final int targetVersion, final Predicate<String> classFilter) {
-        this(transformerManager, targetVersion, classFilter, RuntimeDepCollector.NULL);
+        this(transformerManager, targetVersion, classFilter, RuntimeDepCollector.NULL, null, null);
     }
 
     JavaDowngraderTransformer(
             TransformerManager transformerManager,
             int targetVersion,
             Predicate<String> classFilter,
-            RuntimeDepCollector depCollector
+            RuntimeDepCollector depCollector,
+            DowngradeCache cache,
+            DowngradeListener listener
     ) {
         this.transformerManager = transformerManager;
         this.targetVersion = targetVersion;
         this.classFilter = classFilter;
         this.depCollector = depCollector;
+        this.cache = cache;
+        this.listener = listener;
     }
 
     @Override
@@ -85,12 +100,84 @@ public class JavaDowngraderTransformer implements IBytecodeTransformer {
             return null;
         }
 
+        final DowngradePlan plan = JavaDowngrader.getPlan(majorVersion, this.targetVersion);
+        if (plan != null && !plan.requiresTransformation(bytecode)) {
+            // Nothing to transform, only patch the class version. The input array is owned by the caller
+            final byte[] patched = bytecode.clone();
+            patched[4] = patched[5] = 0;
+            patched[6] = (byte) (this.targetVersion >>> 8);
+            patched[7] = (byte) this.targetVersion;
+            if (this.listener != null) {
+                this.listener.onDowngrade(className, Collections.emptyList(), Collections.emptyList());
+            }
+            return patched;
+        }
+
+        if (this.cache == null && this.listener == null) {
+            return this.downgrade(plan, bytecode, calculateStackMapFrames, this.depCollector, new CommonSuperClassResolver(this.transformerManager.getClassTree(), this.transformerManager.getClassProvider()));
+        }
+        final byte[] key = this.cache != null ? this.cache.createKey(bytecode, this.targetVersion, calculateStackMapFrames) : null;
+        final DowngradeCache.Entry cached = this.cache != null ? this.cache.get(key) : null;
+        if (cached != null && cached.isValid(new CommonSuperClassResolver(this.transformerManager.getClassTree(), this.transformerManager.getClassProvider()))) {
+            cached.getRuntimeDeps().forEach(this.depCollector);
+            if (this.listener != null) {
+                this.listener.onDowngrade(className, cached.getRuntimeDeps(), cached.getResolutions());
+            }
+            return cached.getBytecode();
+        }
+        final List<String> runtimeDeps = new ArrayList<>();
+        final List<String> resolutions = new ArrayList<>();
+        final byte[] result = this.downgrade(plan, bytecode, calculateStackMapFrames, dep -> {
+            runtimeDeps.add(dep);
+            this.depCollector.accept(dep);
+        }, new CommonSuperClassResolver(this.transformerManager.getClassTree(), this.transformerManager.getClassProvider(), resolutions));
+        if (this.cache != null) {
+            this.cache.put(key, new DowngradeCache.Entry(result, runtimeDeps, resolutions));
+        }
+        if (this.listener != null) {
+            this.listener.onDowngrade(className, runtimeDeps, resolutions);
+        }
+        return result;
+    }
+
+    private byte[] downgrade(final DowngradePlan plan, final byte[] bytecode, final boolean calculateStackMapFrames, final RuntimeDepCollector depCollector, final CommonSuperClassResolver resolver) {
+        final StreamingDowngrade downgrade = plan == null ? null : plan.prepare(bytecode, depCollector);
+        if (downgrade != null) {
+            // Methods which are not transformed are copied from the input class file
+            final ClassWriter writer;
+            if (calculateStackMapFrames) {
+                final DowngradeResult result = downgrade.getResult();
+                int flags = ClassWriter.COMPUTE_MAXS;
+                if (result.requiresClassStackMapFrames()) {
+                    flags = ClassWriter.COMPUTE_FRAMES;
+                } else {
+                    downgrade.computeStackMapFrames(new ClassTreeWriter(ClassWriter.COMPUTE_FRAMES, resolver));
+                }
+                writer = new ClassTreeWriter(downgrade.getReader(), flags, resolver);
+            } else {
+                writer = new ClassWriter(downgrade.getReader(), ClassWriter.COMPUTE_MAXS);
+            }
+            downgrade.accept(writer);
+            return writer.toByteArray();
+        }
+
         final ClassNode classNode = ASMUtils.fromBytes(bytecode, 0);
-        final DowngradeResult result = JavaDowngrader.downgrade(classNode, this.targetVersion, this.depCollector);
+        final DowngradeResult result = new DowngradeResult();
+        if (plan != null) {
+            plan.transform(classNode, bytecode, depCollector, result);
+        }
 
         if (calculateStackMapFrames) {
-            int flags = result.requiresStackMapFrames() ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
-            return ASMUtils.toBytes(classNode, this.transformerManager.getClassTree(), this.transformerManager.getClassProvider(), flags);
+            int flags = ClassWriter.COMPUTE_MAXS;
+            if (result.requiresClassStackMapFrames()) {
+                flags = ClassWriter.COMPUTE_FRAMES;
+            } else if (result.requiresStackMapFrames()) {
+                // Only recalculate the frames of the methods whose control flow or local/stack types changed
+                ASMUtil.computeStackMapFrames(classNode, result.getStackMapFrameMethods(), new ClassTreeWriter(ClassWriter.COMPUTE_FRAMES, resolver));
+            }
+            final ClassWriter writer = new ClassTreeWriter(flags, resolver);
+            classNode.accept(writer);
+            return writer.toByteArray();
         } else {
             return ASMUtils.toStacklessBytes(classNode);
         }
@@ -105,6 +192,8 @@ public class JavaDowngraderTransformer implements IBytecodeTransformer {
         private int targetVersion = NATIVE_CLASS_VERSION;
         private Predicate<String> classFilter = c -> true;
         private RuntimeDepCollector depCollector = RuntimeDepCollector.NULL;
+        private DowngradeCache cache;
+        private DowngradeListener listener;
 
         Builder(TransformerManager transformerManager) {
             this.transformerManager = transformerManager;
@@ -125,12 +214,27 @@ public class JavaDowngraderTransformer implements IBytecodeTransformer {
             return this;
         }
 
+        /**
+         * Reuses downgraded classes from the cache and stores newly downgraded classes in it.
+         */
+        public Builder cache(DowngradeCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder listener(DowngradeListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
         public JavaDowngraderTransformer build() {
             return new JavaDowngraderTransformer(
                     transformerManager,
                     targetVersion,
                     classFilter,
-                    depCollector
+                    depCollector,
+                    cache,
+                    listener
             );
         }
     }
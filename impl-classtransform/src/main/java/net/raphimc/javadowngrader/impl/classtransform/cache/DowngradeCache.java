@@ -0,0 +1,371 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform.cache;
+
+import net.raphimc.javadowngrader.JavaDowngrader;
+import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.util.CommonSuperClassResolver;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of downgraded classes which can be shared by multiple processes.<br>
+ * Entries are keyed by the input class, the target version and the JavaDowngrader build. The common super classes resolved while computing stack map frames are stored with each entry and checked against the current class hierarchy before an entry is used.<br>
+ * Entries are written to a temporary file and atomically moved into place, so readers never see partial entries. The least recently used entries are evicted once the cache grows beyond its maximum size.
+ */
+public class DowngradeCache implements Closeable {
+
+    public static final String DIRECTORY_PROPERTY = "javadowngrader.cacheDir";
+    public static final String SIZE_PROPERTY = "javadowngrader.cacheSize";
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A444301;
+    private static final String LOCK_FILE = "cache.lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long STALE_TEMP_FILE_AGE = 60 * 60 * 1000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final long PROCESS_NONCE = System.nanoTime() * 31 + System.identityHashCode(DowngradeCache.class);
+    private static final AtomicLong TEMP_FILE_COUNTER = new AtomicLong();
+    private static byte[] buildFingerprint;
+
+    private final Path directory;
+    private final long maxSize;
+    private final AtomicLong writtenSinceTrim = new AtomicLong();
+
+    public DowngradeCache(final Path directory, final long maxSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Opens the cache configured by the {@value DIRECTORY_PROPERTY} and {@value SIZE_PROPERTY} (in MiB) system properties.
+     *
+     * @return The cache or null if no cache directory is configured
+     */
+    public static DowngradeCache fromSystemProperties() throws IOException {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        final long maxSize = Long.getLong(SIZE_PROPERTY, DEFAULT_MAX_SIZE / (1024 * 1024)) * 1024 * 1024;
+        return new DowngradeCache(Paths.get(directory), maxSize);
+    }
+
+    public byte[] createKey(final byte[] bytecode, final int targetVersion, final boolean calculateStackMapFrames) {
+        final MessageDigest digest = createDigest();
+        digest.update(getBuildFingerprint());
+        digest.update((byte) (targetVersion >>> 24));
+        digest.update((byte) (targetVersion >>> 16));
+        digest.update((byte) (targetVersion >>> 8));
+        digest.update((byte) targetVersion);
+        digest.update((byte) (calculateStackMapFrames ? 1 : 0));
+        digest.update(bytecode);
+        return digest.digest();
+    }
+
+    /**
+     * @return The cached entry or null if there is none or it could not be read
+     */
+    public Entry get(final byte[] key) {
+        final Path file = this.getFile(key);
+        final byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (IOException e) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final byte[] storedKey = new byte[key.length];
+            in.readFully(storedKey);
+            if (!MessageDigest.isEqual(key, storedKey)) {
+                return null;
+            }
+            final byte[] bytecode = new byte[in.readInt()];
+            in.readFully(bytecode);
+            final List<String> runtimeDeps = readStrings(in);
+            final List<String> resolutions = readStrings(in);
+            if (resolutions.size() % 3 != 0) {
+                return null;
+            }
+
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ignored) {
+                // The entry might have been evicted by another process or the cache is read-only
+            }
+            return new Entry(bytecode, runtimeDeps, resolutions);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void put(final byte[] key, final Entry entry) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(entry.bytecode.length + 256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(MAGIC);
+            out.write(key);
+            out.writeInt(entry.bytecode.length);
+            out.write(entry.bytecode);
+            writeStrings(out, entry.runtimeDeps);
+            writeStrings(out, entry.resolutions);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final Path file = this.getFile(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tempFile = file.resolveSibling(file.getFileName() + "." + Long.toHexString(TEMP_FILE_COUNTER.incrementAndGet() ^ PROCESS_NONCE) + TEMP_SUFFIX);
+            Files.write(tempFile, baos.toByteArray(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+        } catch (IOException ignored) {
+            // Failing to cache an entry only costs performance
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        if (this.writtenSinceTrim.addAndGet(baos.size()) > this.maxSize / 8) {
+            this.trim();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is below its maximum size.<br>
+     * Does nothing if another process is already trimming the cache.
+     */
+    public synchronized void trim() {
+        this.writtenSinceTrim.set(0);
+        try (FileChannel lockChannel = FileChannel.open(this.directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                return;
+            }
+            try {
+                final long now = System.currentTimeMillis();
+                final List<CachedFile> files = new ArrayList<>();
+                long totalSize = 0;
+                try (Stream<Path> stream = Files.walk(this.directory, 2)) {
+                    for (Path path : (Iterable<Path>) stream::iterator) {
+                        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (!attributes.isRegularFile() || path.getParent().equals(this.directory)) {
+                            continue;
+                        }
+                        final long lastModified = attributes.lastModifiedTime().toMillis();
+                        if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                            if (now - lastModified > STALE_TEMP_FILE_AGE) {
+                                Files.deleteIfExists(path);
+                            }
+                            continue;
+                        }
+                        files.add(new CachedFile(path, attributes.size(), lastModified));
+                        totalSize += attributes.size();
+                    }
+                }
+                if (totalSize <= this.maxSize) {
+                    return;
+                }
+
+                // Trim a bit further than necessary so the cache isn't trimmed again right away
+                final long targetSize = this.maxSize - this.maxSize / 10;
+                files.sort(Comparator.comparingLong(f -> f.lastModified));
+                for (CachedFile file : files) {
+                    if (totalSize <= targetSize) {
+                        break;
+                    }
+                    try {
+                        Files.deleteIfExists(file.path);
+                        totalSize -= file.size;
+                    } catch (IOException ignored) {
+                        // The file might be in use on some platforms
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | UncheckedIOException ignored) {
+            // Files might be evicted concurrently by another process which isn't holding the lock yet
+        }
+    }
+
+    @Override
+    public void close() {
+        this.trim();
+    }
+
+    private Path getFile(final byte[] key) {
+        final char[] hex = new char[key.length * 2];
+        for (int i = 0; i < key.length; i++) {
+            hex[i * 2] = HEX[(key[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[key[i] & 0xF];
+        }
+        final String name = new String(hex);
+        return this.directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final List<String> strings = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(final DataOutputStream out, final List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the code of JavaDowngrader itself, so entries created by a different build are never used.
+     */
+    public static synchronized byte[] getBuildFingerprint() {
+        if (buildFingerprint == null) {
+            final MessageDigest digest = createDigest();
+            final Set<Path> hashedPaths = new HashSet<>();
+            for (Class<?> clazz : new Class<?>[]{JavaDowngrader.class, JavaDowngraderTransformer.class}) {
+                try {
+                    final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+                    final URL location = codeSource == null ? null : codeSource.getLocation();
+                    final Path path = location == null ? null : Paths.get(location.toURI());
+                    if (path != null && !hashedPaths.add(path)) {
+                        continue;
+                    }
+                    if (path != null && Files.isRegularFile(path)) {
+                        try (InputStream is = Files.newInputStream(path)) {
+                            final byte[] buffer = new byte[8192];
+                            for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+                                digest.update(buffer, 0, read);
+                            }
+                        }
+                    } else if (path != null && Files.isDirectory(path)) {
+                        try (Stream<Path> stream = Files.walk(path)) {
+                            for (Path file : (Iterable<Path>) stream.filter(Files::isRegularFile).sorted()::iterator) {
+                                digest.update(path.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                                digest.update(Files.readAllBytes(file));
+                            }
+                        }
+                    } else {
+                        throw new IOException("Unknown code source " + location);
+                    }
+                } catch (Exception e) {
+                    // Without knowing the build, entries can't be shared between runs
+                    digest.update(Long.toString(System.nanoTime()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            buildFingerprint = digest.digest();
+        }
+        return buildFingerprint;
+    }
+
+    private static final class CachedFile {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private CachedFile(final Path path, final long size, final long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+    public static final class Entry {
+
+        private final byte[] bytecode;
+        private final List<String> runtimeDeps;
+        private final List<String> resolutions;
+
+        /**
+         * @param bytecode    The downgraded class
+         * @param runtimeDeps The runtime dependencies collected while downgrading
+         * @param resolutions The type pairs and common super classes resolved while downgrading, as recorded by {@link CommonSuperClassResolver}
+         */
+        public Entry(final byte[] bytecode, final List<String> runtimeDeps, final List<String> resolutions) {
+            this.bytecode = bytecode;
+            this.runtimeDeps = Collections.unmodifiableList(runtimeDeps);
+            this.resolutions = Collections.unmodifiableList(resolutions);
+        }
+
+        public byte[] getBytecode() {
+            return this.bytecode;
+        }
+
+        public List<String> getRuntimeDeps() {
+            return this.runtimeDeps;
+        }
+
+        public List<String> getResolutions() {
+            return this.resolutions;
+        }
+
+        /**
+         * @return If the class hierarchy seen by the resolver still leads to the same common super classes
+         */
+        public boolean isValid(final CommonSuperClassResolver resolver) {
+            return resolver.resolvesSame(this.resolutions);
+        }
+
+    }
+
+}
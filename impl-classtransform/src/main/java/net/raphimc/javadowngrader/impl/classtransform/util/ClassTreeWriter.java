@@ -0,0 +1,52 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform.util;
+
+import net.lenni0451.classtransform.utils.tree.ClassTree;
+import net.lenni0451.classtransform.utils.tree.IClassProvider;
+import net.lenni0451.classtransform.utils.tree.TreeClassWriter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A {@link ClassWriter} which copies the constant pool and untouched methods from a {@link ClassReader} and resolves common super classes like the {@link TreeClassWriter}.
+ */
+public class ClassTreeWriter extends ClassWriter {
+
+    private final CommonSuperClassResolver resolver;
+
+    public ClassTreeWriter(final ClassReader classReader, final int flags, final ClassTree classTree, final IClassProvider classProvider) {
+        this(classReader, flags, new CommonSuperClassResolver(classTree, classProvider));
+    }
+
+    public ClassTreeWriter(final ClassReader classReader, final int flags, final CommonSuperClassResolver resolver) {
+        super(classReader, flags);
+        this.resolver = resolver;
+    }
+
+    public ClassTreeWriter(final int flags, final CommonSuperClassResolver resolver) {
+        super(flags);
+        this.resolver = resolver;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return this.resolver.getCommonSuperClass(type1, type2);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform.util;
+
+import net.lenni0451.classtransform.utils.tree.ClassTree;
+import net.lenni0451.classtransform.utils.tree.IClassProvider;
+import net.lenni0451.classtransform.utils.tree.TreeClassWriter;
+
+import java.util.List;
+
+/**
+ * Resolves common super classes like the {@link TreeClassWriter} and optionally records every resolution.
+ */
+public class CommonSuperClassResolver {
+
+    private final ClassTree classTree;
+    private final IClassProvider classProvider;
+    private final List<String> resolutions;
+    private Resolver resolver;
+
+    public CommonSuperClassResolver(final ClassTree classTree, final IClassProvider classProvider) {
+        this(classTree, classProvider, null);
+    }
+
+    /**
+     * @param resolutions The list to append each resolved type pair and their common super class to, or null
+     */
+    public CommonSuperClassResolver(final ClassTree classTree, final IClassProvider classProvider, final List<String> resolutions) {
+        this.classTree = classTree;
+        this.classProvider = classProvider;
+        this.resolutions = resolutions;
+    }
+
+    public String getCommonSuperClass(final String type1, final String type2) {
+        if (this.resolver == null) {
+            this.resolver = new Resolver(this.classTree, this.classProvider);
+        }
+        final String commonSuperClass = this.resolver.getCommonSuperClass(type1, type2);
+        if (this.resolutions != null) {
+            this.resolutions.add(type1);
+            this.resolutions.add(type2);
+            this.resolutions.add(commonSuperClass);
+        }
+        return commonSuperClass;
+    }
+
+    /**
+     * @param resolutions The resolutions recorded by another resolver
+     * @return If all type pairs still resolve to the same common super classes
+     */
+    public boolean resolvesSame(final List<String> resolutions) {
+        for (int i = 0; i + 2 < resolutions.size(); i += 3) {
+            try {
+                if (!resolutions.get(i + 2).equals(this.getCommonSuperClass(resolutions.get(i), resolutions.get(i + 1)))) {
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Resolver extends TreeClassWriter {
+
+        private Resolver(final ClassTree classTree, final IClassProvider classProvider) {
+            super(classTree, classProvider);
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            return super.getCommonSuperClass(type1, type2);
+        }
+
+    }
+
+}
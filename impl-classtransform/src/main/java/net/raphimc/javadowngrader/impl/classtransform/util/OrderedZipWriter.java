@@ -0,0 +1,453 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import static net.raphimc.javadowngrader.impl.classtransform.util.ZipArchive.*;
+
+/**
+ * Writes zip entries produced by multiple threads on a dedicated thread in the order they were reserved in.<br>
+ * Entries are compressed by the thread which fills their slot and entries copied from a {@link ZipArchive} are written without inflating them again.<br>
+ * The amount of data waiting to be written is bounded, so {@link #reserve(long)} blocks until earlier entries have been written.
+ */
+public class OrderedZipWriter implements Closeable {
+
+    private static final int UTF8_FLAG = 0x0800;
+
+    private final OutputStream out;
+    private final int compressionLevel;
+    private final int maxBufferedBytes;
+    private final Semaphore bufferPermits;
+    private final Queue<Slot> slots = new ArrayDeque<>();
+    private final List<Record> writtenRecords = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private final Thread thread;
+    private long position;
+    private boolean finished;
+    private Throwable failure;
+
+    /**
+     * @param out              The stream to write the zip to
+     * @param compressionLevel The deflate level for new entries, or {@link Deflater#NO_COMPRESSION} to store them
+     * @param maxBufferedBytes The maximum amount of entry data which may be waiting to be written
+     */
+    public OrderedZipWriter(final OutputStream out, final int compressionLevel, final int maxBufferedBytes) {
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.out = out;
+        this.compressionLevel = compressionLevel;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.bufferPermits = new Semaphore(maxBufferedBytes);
+        this.thread = new Thread(this::run, "JavaDowngrader Zip Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Reserves the next position in the output. Must always be called from the same thread.
+     *
+     * @param size The expected size of the data which will be buffered for the entry
+     * @return The slot which has to be filled or skipped
+     */
+    public Slot reserve(final long size) throws IOException {
+        final int permits = (int) Math.min(Math.max(size, 0), this.maxBufferedBytes);
+        try {
+            this.bufferPermits.acquire(permits);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        final Slot slot = new Slot(permits);
+        synchronized (this.slots) {
+            this.checkFailure();
+            this.slots.add(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Aborts writing. Slots which are still waiting are dropped and the failure is rethrown by {@link #finish()}.
+     */
+    public void fail(final Throwable t) {
+        synchronized (this.slots) {
+            if (this.failure != null) {
+                return;
+            }
+            this.failure = t;
+            this.slots.notifyAll();
+        }
+        this.bufferPermits.release(this.maxBufferedBytes);
+    }
+
+    /**
+     * Waits until all reserved slots and the central directory have been written.
+     */
+    public void finish() throws IOException {
+        synchronized (this.slots) {
+            this.finished = true;
+            this.slots.notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        synchronized (this.slots) {
+            this.checkFailure();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.slots) {
+            if (!this.finished && this.failure == null) {
+                this.failure = new IOException("Writer was closed before all entries were written");
+            }
+            this.finished = true;
+            this.slots.notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure instanceof IOException) {
+            throw (IOException) this.failure;
+        } else if (this.failure != null) {
+            throw new IOException(this.failure);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final Slot slot;
+                synchronized (this.slots) {
+                    while (this.failure == null && (this.slots.isEmpty() ? !this.finished : !this.slots.peek().done)) {
+                        this.slots.wait();
+                    }
+                    if (this.failure != null) {
+                        return;
+                    } else if (this.slots.isEmpty()) {
+                        break;
+                    }
+                    slot = this.slots.poll();
+                }
+
+                if (slot.record != null) {
+                    this.writeEntry(slot.record);
+                    slot.record = null;
+                }
+                this.bufferPermits.release(slot.permits);
+            }
+            this.writeCentralDirectory();
+            this.out.flush();
+        } catch (Throwable t) {
+            this.fail(t);
+        }
+    }
+
+    private void writeEntry(final Record record) throws IOException {
+        record.localHeaderOffset = this.position;
+        final boolean zip64 = record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC;
+        this.header.clear();
+        this.header.putInt(LOCAL_HEADER_SIGNATURE);
+        this.header.putShort((short) (zip64 ? 45 : 20));
+        this.header.putShort((short) record.flags);
+        this.header.putShort((short) record.method);
+        this.header.putInt(record.dosTime);
+        this.header.putInt(record.crc);
+        this.header.putInt((int) (zip64 ? ZIP64_MAGIC : record.compressedSize));
+        this.header.putInt((int) (zip64 ? ZIP64_MAGIC : record.size));
+        this.header.putShort((short) record.name.length);
+        this.header.putShort((short) (zip64 ? 20 : 0));
+        this.writeHeader();
+        this.write(record.name, record.name.length);
+        if (zip64) {
+            this.header.clear();
+            this.header.putShort((short) ZIP64_EXTRA_ID);
+            this.header.putShort((short) 16);
+            this.header.putLong(record.size);
+            this.header.putLong(record.compressedSize);
+            this.writeHeader();
+        }
+
+        if (record.data != null) {
+            this.write(record.data, (int) record.compressedSize);
+            record.data = null;
+        } else {
+            record.source.transferRaw(record.sourceEntry, this.out);
+            this.position += record.compressedSize;
+            record.source = null;
+            record.sourceEntry = null;
+        }
+        this.writtenRecords.add(record);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        final long directoryOffset = this.position;
+        for (Record record : this.writtenRecords) {
+            final boolean zip64Size = record.size >= ZIP64_MAGIC;
+            final boolean zip64CompressedSize = record.compressedSize >= ZIP64_MAGIC;
+            final boolean zip64Offset = record.localHeaderOffset >= ZIP64_MAGIC;
+            final int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+            final int version = extraLength != 0 ? 45 : 20;
+            this.header.clear();
+            this.header.putInt(CENTRAL_HEADER_SIGNATURE);
+            this.header.putShort((short) version);
+            this.header.putShort((short) version);
+            this.header.putShort((short) record.flags);
+            this.header.putShort((short) record.method);
+            this.header.putInt(record.dosTime);
+            this.header.putInt(record.crc);
+            this.header.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : record.compressedSize));
+            this.header.putInt((int) (zip64Size ? ZIP64_MAGIC : record.size));
+            this.header.putShort((short) record.name.length);
+            this.header.putShort((short) (extraLength != 0 ? extraLength + 4 : 0));
+            this.header.putShort((short) 0); // Comment length
+            this.header.putShort((short) 0); // Disk number
+            this.header.putShort((short) 0); // Internal attributes
+            this.header.putInt(record.isDirectory() ? 0x10 : 0); // External attributes
+            this.header.putInt((int) (zip64Offset ? ZIP64_MAGIC : record.localHeaderOffset));
+            this.writeHeader();
+            this.write(record.name, record.name.length);
+            if (extraLength != 0) {
+                this.header.clear();
+                this.header.putShort((short) ZIP64_EXTRA_ID);
+                this.header.putShort((short) extraLength);
+                if (zip64Size) {
+                    this.header.putLong(record.size);
+                }
+                if (zip64CompressedSize) {
+                    this.header.putLong(record.compressedSize);
+                }
+                if (zip64Offset) {
+                    this.header.putLong(record.localHeaderOffset);
+                }
+                this.writeHeader();
+            }
+        }
+        final long directorySize = this.position - directoryOffset;
+        final int entryCount = this.writtenRecords.size();
+
+        if (entryCount >= 0xFFFF || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC) {
+            final long zip64EndOffset = this.position;
+            this.header.clear();
+            this.header.putInt(ZIP64_END_SIGNATURE);
+            this.header.putLong(44); // Size of the remaining record
+            this.header.putShort((short) 45);
+            this.header.putShort((short) 45);
+            this.header.putInt(0); // Disk number
+            this.header.putInt(0); // Disk with the central directory
+            this.header.putLong(entryCount);
+            this.header.putLong(entryCount);
+            this.header.putLong(directorySize);
+            this.header.putLong(directoryOffset);
+            this.header.putInt(ZIP64_LOCATOR_SIGNATURE);
+            this.header.putInt(0); // Disk with the zip64 end of central directory
+            this.header.putLong(zip64EndOffset);
+            this.header.putInt(1); // Total number of disks
+            this.writeHeader();
+        }
+        this.header.clear();
+        this.header.putInt(END_SIGNATURE);
+        this.header.putShort((short) 0); // Disk number
+        this.header.putShort((short) 0); // Disk with the central directory
+        this.header.putShort((short) Math.min(entryCount, 0xFFFF));
+        this.header.putShort((short) Math.min(entryCount, 0xFFFF));
+        this.header.putInt((int) Math.min(directorySize, ZIP64_MAGIC));
+        this.header.putInt((int) Math.min(directoryOffset, ZIP64_MAGIC));
+        this.header.putShort((short) 0); // Comment length
+        this.writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        this.write(this.header.array(), this.header.position());
+    }
+
+    private void write(final byte[] data, final int length) throws IOException {
+        this.out.write(data, 0, length);
+        this.position += length;
+    }
+
+    private byte[] deflate(final byte[] data) {
+        final Deflater deflater = new Deflater(this.compressionLevel, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(data.length / 2, 64)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    if (buffer.length >= data.length) {
+                        return null;
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, data.length));
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return length < data.length ? Arrays.copyOf(buffer, length) : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int toDosTime(final long time) {
+        final LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (dateTime.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (dateTime.getYear() - 1980) << 25
+                | dateTime.getMonthValue() << 21
+                | dateTime.getDayOfMonth() << 16
+                | dateTime.getHour() << 11
+                | dateTime.getMinute() << 5
+                | dateTime.getSecond() >> 1;
+    }
+
+    private static byte[] encodeName(final String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Entry name too long: " + name);
+        }
+        return bytes;
+    }
+
+    private static int getNameFlags(final String name, final byte[] encodedName) {
+        return encodedName.length != name.length() ? UTF8_FLAG : 0;
+    }
+
+    public final class Slot {
+
+        private final int permits;
+        private Record record;
+        private boolean done;
+
+        private Slot(final int permits) {
+            this.permits = permits;
+        }
+
+        /**
+         * Compresses the data on the calling thread and queues it for writing.
+         */
+        public void write(final String name, final long time, final byte[] data) {
+            this.write(name, toDosTime(time), data);
+        }
+
+        /**
+         * Compresses the data on the calling thread and queues it for writing under the name and time of the archive entry.
+         */
+        public void write(final ZipArchive.Entry entry, final byte[] data) {
+            this.write(entry.getName(), entry.getDosTime(), data);
+        }
+
+        private void write(final String name, final int dosTime, final byte[] data) {
+            final byte[] encodedName = encodeName(name);
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            final byte[] compressed = OrderedZipWriter.this.compressionLevel != Deflater.NO_COMPRESSION && data.length != 0 ? OrderedZipWriter.this.deflate(data) : null;
+
+            final Record record = new Record(encodedName, getNameFlags(name, encodedName), compressed != null ? ZipEntry.DEFLATED : ZipEntry.STORED, dosTime, (int) crc.getValue(), data.length);
+            record.compressedSize = compressed != null ? compressed.length : data.length;
+            record.data = compressed != null ? compressed : data;
+            this.complete(record);
+        }
+
+        /**
+         * Copies the entry from the archive on the writer thread, without inflating and deflating its data.
+         */
+        public void copy(final ZipArchive archive, final ZipArchive.Entry entry) {
+            final byte[] encodedName = encodeName(entry.getName());
+            final Record record = new Record(encodedName, getNameFlags(entry.getName(), encodedName), entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getSize());
+            record.compressedSize = entry.getCompressedSize();
+            record.source = archive;
+            record.sourceEntry = entry;
+            this.complete(record);
+        }
+
+        public void skip() {
+            this.complete(null);
+        }
+
+        private void complete(final Record record) {
+            synchronized (OrderedZipWriter.this.slots) {
+                if (this.done) {
+                    throw new IllegalStateException("Slot was already completed");
+                }
+                this.record = record;
+                this.done = true;
+                OrderedZipWriter.this.slots.notifyAll();
+            }
+        }
+
+    }
+
+    private static final class Record {
+
+        private final byte[] name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long size;
+        private long compressedSize;
+        private long localHeaderOffset;
+        private byte[] data;
+        private ZipArchive source;
+        private ZipArchive.Entry sourceEntry;
+
+        private Record(final byte[] name, final int flags, final int method, final int dosTime, final int crc, final long size) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        private boolean isDirectory() {
+            return this.name.length > 0 && this.name[this.name.length - 1] == '/';
+        }
+
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.impl.classtransform.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal zip reader which reads the central directory once and gives access to both the uncompressed and the raw compressed data of the entries.<br>
+ * All reads are positional, so entries can be read by multiple threads at the same time.
+ */
+public class ZipArchive implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int TRANSFER_BUFFER_SIZE = 65536;
+
+    private final FileChannel channel;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName;
+
+    public ZipArchive(final Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.entries = Collections.unmodifiableList(this.readCentralDirectory());
+        } catch (Throwable t) {
+            this.channel.close();
+            throw t;
+        }
+        this.entriesByName = new HashMap<>(this.entries.size() * 2);
+        for (Entry entry : this.entries) {
+            this.entriesByName.putIfAbsent(entry.name, entry);
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    public Entry getEntry(final String name) {
+        return this.entriesByName.get(name);
+    }
+
+    /**
+     * Reads and inflates the data of an entry.
+     */
+    public byte[] read(final Entry entry) throws IOException {
+        final byte[] raw = this.readRaw(entry);
+        if (entry.method == ZipEntry.STORED) {
+            return raw;
+        } else if (entry.method != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name);
+        }
+
+        final byte[] data = new byte[(int) entry.size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int offset = 0;
+            while (offset < data.length) {
+                final int inflated = inflater.inflate(data, offset, data.length - offset);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != data.length) {
+                throw new ZipException("Invalid entry size for " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflate data for " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * Reads the data of an entry as it is stored in the archive, without inflating it.
+     */
+    public byte[] readRaw(final Entry entry) throws IOException {
+        if (entry.compressedSize > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + entry.name);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) entry.compressedSize);
+        this.readFully(buffer, this.getDataOffset(entry));
+        return buffer.array();
+    }
+
+    /**
+     * Copies the data of an entry as it is stored in the archive, without inflating it.
+     */
+    public void transferRaw(final Entry entry, final OutputStream out) throws IOException {
+        long position = this.getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(remaining, TRANSFER_BUFFER_SIZE));
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(remaining, buffer.capacity()));
+            this.readFully(buffer, position);
+            out.write(buffer.array(), 0, buffer.limit());
+            position += buffer.limit();
+            remaining -= buffer.limit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private long getDataOffset(final Entry entry) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.readFully(header, entry.localHeaderOffset);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        final long fileSize = this.channel.size();
+        final int tailSize = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+        final ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.readFully(tail, fileSize - tailSize);
+
+        int endPosition = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE && i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailSize) {
+                endPosition = i;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        long entryCount = tail.getShort(endPosition + 10) & 0xFFFF;
+        long directorySize = tail.getInt(endPosition + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endPosition + 16) & ZIP64_MAGIC;
+        final long endOffset = fileSize - tailSize + endPosition;
+        long directoryEnd = endOffset;
+        if ((entryCount == 0xFFFF || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) && endOffset >= 20) {
+            final ByteBuffer locator = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+            this.readFully(locator, endOffset - 20);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                final ByteBuffer end = ByteBuffer.allocate(ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                directoryEnd = locator.getLong(8);
+                if (directoryEnd < 0 || directoryEnd > endOffset - 20 - ZIP64_END_SIZE || !this.hasSignature(end, directoryEnd, ZIP64_END_SIGNATURE)) {
+                    // The offset doesn't include data prepended to the zip, the record is usually right before the locator
+                    directoryEnd = endOffset - 20 - ZIP64_END_SIZE;
+                    if (directoryEnd < 0 || !this.hasSignature(end, directoryEnd, ZIP64_END_SIGNATURE)) {
+                        throw new ZipException("Invalid zip64 end of central directory");
+                    }
+                }
+                entryCount = end.getLong(32);
+                directorySize = end.getLong(40);
+                directoryOffset = end.getLong(48);
+            }
+        }
+        // Offsets are relative to the start of the zip, which isn't the start of the file if something was prepended (e.g. a launch script)
+        final long prefixLength = directoryEnd - directorySize - directoryOffset;
+        if (directorySize > Integer.MAX_VALUE || prefixLength < 0) {
+            throw new ZipException("Invalid central directory");
+        }
+        directoryOffset += prefixLength;
+
+        final ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        this.readFully(directory, directoryOffset);
+        final List<Entry> entries = new ArrayList<>((int) Math.min(entryCount, directorySize / CENTRAL_HEADER_SIZE));
+        int position = 0;
+        while (position + CENTRAL_HEADER_SIZE <= directorySize && directory.getInt(position) == CENTRAL_HEADER_SIGNATURE) {
+            final int flags = directory.getShort(position + 8) & 0xFFFF;
+            final int method = directory.getShort(position + 10) & 0xFFFF;
+            final int dosTime = directory.getInt(position + 12);
+            final int crc = directory.getInt(position + 16);
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+            final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+            final String name = new String(directory.array(), position + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+
+            int extraPosition = position + CENTRAL_HEADER_SIZE + nameLength;
+            final int extraEnd = extraPosition + extraLength;
+            while (extraPosition + 4 <= extraEnd) {
+                final int id = directory.getShort(extraPosition) & 0xFFFF;
+                final int length = directory.getShort(extraPosition + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA_ID) {
+                    int valuePosition = extraPosition + 4;
+                    if (size == ZIP64_MAGIC) {
+                        size = directory.getLong(valuePosition);
+                        valuePosition += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(valuePosition);
+                        valuePosition += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = directory.getLong(valuePosition);
+                    }
+                }
+                extraPosition += 4 + length;
+            }
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted entries are not supported: " + name);
+            }
+
+            entries.add(new Entry(name, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset + prefixLength));
+            position = extraEnd + commentLength;
+        }
+        if (entries.size() != entryCount) {
+            throw new ZipException("Expected " + entryCount + " entries in the central directory but found " + entries.size());
+        }
+        return entries;
+    }
+
+    private boolean hasSignature(final ByteBuffer buffer, final long position, final int signature) throws IOException {
+        buffer.clear();
+        this.readFully(buffer, position);
+        return buffer.getInt(0) == signature;
+    }
+
+    private void readFully(final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    public static final class Entry {
+
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(final String name, final int flags, final int method, final int dosTime, final int crc, final long compressedSize, final long size, final long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        public int getFlags() {
+            return this.flags;
+        }
+
+        public int getMethod() {
+            return this.method;
+        }
+
+        public int getDosTime() {
+            return this.dosTime;
+        }
+
+        public int getCrc() {
+            return this.crc;
+        }
+
+        public long getCompressedSize() {
+            return this.compressedSize;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.raphimc.javadowngrader.runtime.java.io;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Objects;
+
+public class InputStreams {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+    private static final ThreadLocal<byte[]> TRANSFER_BUFFER = new ThreadLocal<>();
+
+    public static byte[] readAllBytes(final InputStream in) throws IOException {
+        return readNBytes(in, Integer.MAX_VALUE);
+    }
+
+    public static byte[] readNBytes(final InputStream in, final int len) throws IOException {
+        if (len < 0) {
+            throw new IllegalArgumentException("len < 0");
+        }
+
+        byte[] buffer = new byte[Math.min(len, Math.max(in.available(), DEFAULT_BUFFER_SIZE))];
+        int count = 0;
+        while (count < len) {
+            if (count == buffer.length) {
+                // Probe for the end of the stream before growing, so an exactly sized buffer can be returned without copying
+                final int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                if (buffer.length == MAX_BUFFER_SIZE) {
+                    throw new OutOfMemoryError("Required array size too large");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(Math.min(len, MAX_BUFFER_SIZE), Math.max((long) buffer.length << 1, DEFAULT_BUFFER_SIZE)));
+                buffer[count++] = (byte) b;
+                continue;
+            }
+
+            final int read = in.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    }
+
+    public static int readNBytes(final InputStream in, final byte[] b, final int off, final int len) throws IOException {
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Range [" + off + ", " + off + " + " + len + ") out of bounds for length " + b.length);
+        }
+
+        int count = 0;
+        while (count < len) {
+            final int read = in.read(b, off + count, len - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    public static long transferTo(final InputStream in, final OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "out");
+
+        long transferred = 0;
+        if (in.getClass() == FileInputStream.class && out.getClass() == FileOutputStream.class) {
+            transferred = transferTo(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+        }
+
+        // The buffer is taken out of the thread local while in use, so a reentrant call allocates its own one
+        byte[] buffer = TRANSFER_BUFFER.get();
+        if (buffer == null) {
+            buffer = new byte[DEFAULT_BUFFER_SIZE];
+        } else {
+            TRANSFER_BUFFER.set(null);
+        }
+        try {
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, read);
+                transferred += read;
+            }
+        } finally {
+            TRANSFER_BUFFER.set(buffer);
+        }
+        return transferred;
+    }
+
+    private static long transferTo(final FileChannel source, final FileChannel target) throws IOException {
+        final long start;
+        final long size;
+        try {
+            start = source.position();
+            size = source.size();
+        } catch (IOException e) {
+            // Streams which can't seek (e.g. stdin or a pipe) are copied with the buffer instead
+            return 0;
+        }
+        long position = start;
+        while (position < size) {
+            final long count = source.transferTo(position, size - position, target);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+        }
+        source.position(position);
+        return position - start;
+    }
+
+}
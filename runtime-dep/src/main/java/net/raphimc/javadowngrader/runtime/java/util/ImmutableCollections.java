@@ -0,0 +1,1042 @@
+/*
+ * MIT License
+ *
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.raphimc.javadowngrader.runtime.java.util;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Port of the compact immutable collections which are returned by the Java 9+ collection factory methods.<br>
+ * Nested classes have to be added to the nested class list of {@code ImmutableCollectionsRuntime} in the transformer.
+ */
+public class ImmutableCollections {
+
+    static final int EXPAND_FACTOR = 2;
+
+    static final List<?> EMPTY_LIST = new ListN<>(new Object[0]);
+    static final Set<?> EMPTY_SET = new SetN<>();
+    static final Map<?, ?> EMPTY_MAP = new MapN<>();
+
+    @SuppressWarnings("unchecked")
+    public static <E> List<E> listOf() {
+        return (List<E>) EMPTY_LIST;
+    }
+
+    public static <E> List<E> listOf(final E e1) {
+        return new List12<>(e1);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2) {
+        return new List12<>(e1, e2);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3) {
+        return listFromTrustedArray(e1, e2, e3);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4) {
+        return listFromTrustedArray(e1, e2, e3, e4);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5, e6);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5, e6, e7);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5, e6, e7, e8);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8, final E e9) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5, e6, e7, e8, e9);
+    }
+
+    public static <E> List<E> listOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8, final E e9, final E e10) {
+        return listFromTrustedArray(e1, e2, e3, e4, e5, e6, e7, e8, e9, e10);
+    }
+
+    @SafeVarargs
+    public static <E> List<E> listOf(final E... elements) {
+        switch (elements.length) {
+            case 0:
+                return listOf();
+            case 1:
+                return new List12<>(elements[0]);
+            case 2:
+                return new List12<>(elements[0], elements[1]);
+            default:
+                return listFromTrustedArray(Arrays.copyOf(elements, elements.length, Object[].class));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> List<E> listCopyOf(final Collection<? extends E> collection) {
+        // Lists which allow nulls (e.g. from Stream.toList) have to be copied to reject them
+        if (collection instanceof List12 || collection instanceof ListN && !((ListN<?>) collection).allowNulls) {
+            return (List<E>) collection;
+        }
+        return listFromTrustedArray(collection.toArray());
+    }
+
+    /**
+     * Creates a list which uses the given array without copying it.
+     *
+     * @param input The elements of the list, must not be modified afterwards
+     * @param <E>   The type of the elements
+     * @return The list
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> List<E> listFromTrustedArray(final Object... input) {
+        for (Object element : input) {
+            Objects.requireNonNull(element);
+        }
+        switch (input.length) {
+            case 0:
+                return (List<E>) EMPTY_LIST;
+            case 1:
+                return new List12<>((E) input[0]);
+            case 2:
+                return new List12<>((E) input[0], (E) input[1]);
+            default:
+                return new ListN<>(input);
+        }
+    }
+
+    /**
+     * Creates a list which uses the given array without copying it and allows null elements.
+     *
+     * @param input The elements of the list, must not be modified afterwards
+     * @param <E>   The type of the elements
+     * @return The list
+     */
+    public static <E> List<E> listFromTrustedArrayNullsAllowed(final Object... input) {
+        return new ListN<>(input, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> Set<E> setOf() {
+        return (Set<E>) EMPTY_SET;
+    }
+
+    public static <E> Set<E> setOf(final E e1) {
+        return new Set12<>(e1);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2) {
+        return new Set12<>(e1, e2);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3) {
+        return new SetN<>(e1, e2, e3);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4) {
+        return new SetN<>(e1, e2, e3, e4);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5) {
+        return new SetN<>(e1, e2, e3, e4, e5);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6) {
+        return new SetN<>(e1, e2, e3, e4, e5, e6);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7) {
+        return new SetN<>(e1, e2, e3, e4, e5, e6, e7);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8) {
+        return new SetN<>(e1, e2, e3, e4, e5, e6, e7, e8);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8, final E e9) {
+        return new SetN<>(e1, e2, e3, e4, e5, e6, e7, e8, e9);
+    }
+
+    public static <E> Set<E> setOf(final E e1, final E e2, final E e3, final E e4, final E e5, final E e6, final E e7, final E e8, final E e9, final E e10) {
+        return new SetN<>(e1, e2, e3, e4, e5, e6, e7, e8, e9, e10);
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public static <E> Set<E> setOf(final E... elements) {
+        switch (elements.length) {
+            case 0:
+                return setOf();
+            case 1:
+                return new Set12<>(elements[0]);
+            case 2:
+                return new Set12<>(elements[0], elements[1]);
+            default:
+                return new SetN<>((Object[]) elements);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> Set<E> setCopyOf(final Collection<? extends E> collection) {
+        if (collection instanceof AbstractImmutableSet) {
+            return (Set<E>) collection;
+        }
+        return (Set<E>) setOf(new HashSet<>(collection).toArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> mapOf() {
+        return (Map<K, V>) EMPTY_MAP;
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1) {
+        return new Map1<>(k1, v1);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2) {
+        return new MapN<>(k1, v1, k2, v2);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5, final K k6, final V v6) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5, k6, v6);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5, final K k6, final V v6, final K k7, final V v7) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5, k6, v6, k7, v7);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5, final K k6, final V v6, final K k7, final V v7, final K k8, final V v8) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5, k6, v6, k7, v7, k8, v8);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5, final K k6, final V v6, final K k7, final V v7, final K k8, final V v8, final K k9, final V v9) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5, k6, v6, k7, v7, k8, v8, k9, v9);
+    }
+
+    public static <K, V> Map<K, V> mapOf(final K k1, final V v1, final K k2, final V v2, final K k3, final V v3, final K k4, final V v4, final K k5, final V v5, final K k6, final V v6, final K k7, final V v7, final K k8, final V v8, final K k9, final V v9, final K k10, final V v10) {
+        return new MapN<>(k1, v1, k2, v2, k3, v3, k4, v4, k5, v5, k6, v6, k7, v7, k8, v8, k9, v9, k10, v10);
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> mapOfEntries(final Map.Entry<? extends K, ? extends V>... entries) {
+        if (entries.length == 0) {
+            return mapOf();
+        } else if (entries.length == 1) {
+            return new Map1<>(entries[0].getKey(), entries[0].getValue());
+        }
+
+        final Object[] keysAndValues = new Object[entries.length << 1];
+        for (int i = 0; i < entries.length; i++) {
+            keysAndValues[i << 1] = entries[i].getKey();
+            keysAndValues[(i << 1) + 1] = entries[i].getValue();
+        }
+        return new MapN<>(keysAndValues);
+    }
+
+    /**
+     * Creates a map from the given array of alternating keys and values.
+     *
+     * @param keysAndValues The keys and values of the map, must not be modified afterwards
+     * @param <K>           The type of the keys
+     * @param <V>           The type of the values
+     * @return The map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> mapFromTrustedArray(final Object... keysAndValues) {
+        switch (keysAndValues.length) {
+            case 0:
+                return mapOf();
+            case 2:
+                return new Map1<>((K) keysAndValues[0], (V) keysAndValues[1]);
+            default:
+                return new MapN<>(keysAndValues);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> mapCopyOf(final Map<? extends K, ? extends V> map) {
+        if (map instanceof AbstractImmutableMap) {
+            return (Map<K, V>) map;
+        }
+        return (Map<K, V>) mapOfEntries(map.entrySet().toArray(new Map.Entry[0]));
+    }
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    abstract static class AbstractImmutableList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+
+        @Override
+        public boolean add(final E e) {
+            throw uoe();
+        }
+
+        @Override
+        public void add(final int index, final E element) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends E> c) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean addAll(final int index, final Collection<? extends E> c) {
+            throw uoe();
+        }
+
+        @Override
+        public void clear() {
+            throw uoe();
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            throw uoe();
+        }
+
+        @Override
+        public E remove(final int index) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> c) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super E> filter) {
+            throw uoe();
+        }
+
+        @Override
+        public void replaceAll(final UnaryOperator<E> operator) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> c) {
+            throw uoe();
+        }
+
+        @Override
+        public E set(final int index, final E element) {
+            throw uoe();
+        }
+
+        @Override
+        public void sort(final Comparator<? super E> c) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return this.indexOf(o) >= 0;
+        }
+
+        @Override
+        public int indexOf(final Object o) {
+            Objects.requireNonNull(o);
+            for (int i = 0, size = this.size(); i < size; i++) {
+                if (o.equals(this.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(final Object o) {
+            Objects.requireNonNull(o);
+            for (int i = this.size() - 1; i >= 0; i--) {
+                if (o.equals(this.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+
+    }
+
+    static final class List12<E> extends AbstractImmutableList<E> {
+
+        private final E e0;
+        private final E e1; // null for lists with a single element
+
+        List12(final E e0) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = null;
+        }
+
+        List12(final E e0, final E e1) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = Objects.requireNonNull(e1);
+        }
+
+        @Override
+        public int size() {
+            return this.e1 != null ? 2 : 1;
+        }
+
+        @Override
+        public E get(final int index) {
+            if (index == 0) {
+                return this.e0;
+            } else if (index == 1 && this.e1 != null) {
+                return this.e1;
+            }
+            throw new IndexOutOfBoundsException("Index: " + index + " Size: " + this.size());
+        }
+
+        @Override
+        public Object[] toArray() {
+            return this.e1 != null ? new Object[]{this.e0, this.e1} : new Object[]{this.e0};
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_LIST, this.toArray());
+        }
+
+    }
+
+    static final class ListN<E> extends AbstractImmutableList<E> {
+
+        private final E[] elements;
+        private final boolean allowNulls;
+
+        ListN(final Object[] elements) {
+            this(elements, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        ListN(final Object[] elements, final boolean allowNulls) {
+            this.elements = (E[]) elements;
+            this.allowNulls = allowNulls;
+        }
+
+        @Override
+        public int size() {
+            return this.elements.length;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.elements.length == 0;
+        }
+
+        @Override
+        public E get(final int index) {
+            return this.elements[index];
+        }
+
+        @Override
+        public int indexOf(final Object o) {
+            if (!this.allowNulls && o == null) {
+                throw new NullPointerException();
+            }
+            for (int i = 0; i < this.elements.length; i++) {
+                if (Objects.equals(o, this.elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(final Object o) {
+            if (!this.allowNulls && o == null) {
+                throw new NullPointerException();
+            }
+            for (int i = this.elements.length - 1; i >= 0; i--) {
+                if (Objects.equals(o, this.elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(this.elements, this.elements.length, Object[].class);
+        }
+
+        private Object writeReplace() {
+            return new CollSer(this.allowNulls ? CollSer.IMM_LIST_NULLS : CollSer.IMM_LIST, this.elements);
+        }
+
+    }
+
+    abstract static class AbstractImmutableSet<E> extends AbstractSet<E> implements Serializable {
+
+        @Override
+        public boolean add(final E e) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends E> c) {
+            throw uoe();
+        }
+
+        @Override
+        public void clear() {
+            throw uoe();
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> c) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super E> filter) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> c) {
+            throw uoe();
+        }
+
+        private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+
+    }
+
+    static final class Set12<E> extends AbstractImmutableSet<E> {
+
+        private final E e0;
+        private final E e1; // null for sets with a single element
+
+        Set12(final E e0) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = null;
+        }
+
+        Set12(final E e0, final E e1) {
+            if (e0.equals(Objects.requireNonNull(e1))) {
+                throw new IllegalArgumentException("duplicate element: " + e0);
+            }
+            this.e0 = e0;
+            this.e1 = e1;
+        }
+
+        @Override
+        public int size() {
+            return this.e1 != null ? 2 : 1;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return o.equals(this.e0) || o.equals(this.e1);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.e0.hashCode() + (this.e1 != null ? this.e1.hashCode() : 0);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new ArrayItr<>(this.toArray());
+        }
+
+        @Override
+        public Object[] toArray() {
+            return this.e1 != null ? new Object[]{this.e0, this.e1} : new Object[]{this.e0};
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_SET, this.toArray());
+        }
+
+    }
+
+    static final class SetN<E> extends AbstractImmutableSet<E> {
+
+        private final E[] elements; // open addressing hash table
+        private final int size;
+
+        @SuppressWarnings("unchecked")
+        SetN(final Object... input) {
+            this.size = input.length;
+            this.elements = (E[]) new Object[EXPAND_FACTOR * input.length];
+            for (Object element : input) {
+                final int index = this.probe(Objects.requireNonNull(element));
+                if (index >= 0) {
+                    throw new IllegalArgumentException("duplicate element: " + element);
+                }
+                this.elements[-(index + 1)] = (E) element;
+            }
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            Objects.requireNonNull(o);
+            return this.size > 0 && this.probe(o) >= 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 0;
+            for (E element : this.elements) {
+                if (element != null) {
+                    hash += element.hashCode();
+                }
+            }
+            return hash;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new ArrayItr<>(this.elements);
+        }
+
+        // Returns the index of the element or -(insertion point + 1) if it is absent
+        private int probe(final Object o) {
+            int index = Math.floorMod(o.hashCode(), this.elements.length);
+            while (true) {
+                final E element = this.elements[index];
+                if (element == null) {
+                    return -index - 1;
+                } else if (o.equals(element)) {
+                    return index;
+                } else if (++index == this.elements.length) {
+                    index = 0;
+                }
+            }
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_SET, this.toArray());
+        }
+
+    }
+
+    static final class ArrayItr<E> implements Iterator<E> {
+
+        private final Object[] array; // null slots are skipped
+        private int index;
+
+        ArrayItr(final Object[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.index < this.array.length && this.array[this.index] == null) {
+                this.index++;
+            }
+            return this.index < this.array.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (E) this.array[this.index++];
+        }
+
+    }
+
+    abstract static class AbstractImmutableMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+        @Override
+        public void clear() {
+            throw uoe();
+        }
+
+        @Override
+        public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            throw uoe();
+        }
+
+        @Override
+        public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) {
+            throw uoe();
+        }
+
+        @Override
+        public V computeIfPresent(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            throw uoe();
+        }
+
+        @Override
+        public V merge(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            throw uoe();
+        }
+
+        @Override
+        public V put(final K key, final V value) {
+            throw uoe();
+        }
+
+        @Override
+        public void putAll(final Map<? extends K, ? extends V> m) {
+            throw uoe();
+        }
+
+        @Override
+        public V putIfAbsent(final K key, final V value) {
+            throw uoe();
+        }
+
+        @Override
+        public V remove(final Object key) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean remove(final Object key, final Object value) {
+            throw uoe();
+        }
+
+        @Override
+        public V replace(final K key, final V value) {
+            throw uoe();
+        }
+
+        @Override
+        public boolean replace(final K key, final V oldValue, final V newValue) {
+            throw uoe();
+        }
+
+        @Override
+        public void replaceAll(final BiFunction<? super K, ? super V, ? extends V> function) {
+            throw uoe();
+        }
+
+        @Override
+        public V getOrDefault(final Object key, final V defaultValue) {
+            final V value = this.get(key);
+            return value != null ? value : defaultValue;
+        }
+
+        private void readObject(final ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+
+    }
+
+    static final class Map1<K, V> extends AbstractImmutableMap<K, V> {
+
+        private final K k0;
+        private final V v0;
+
+        Map1(final K k0, final V v0) {
+            this.k0 = Objects.requireNonNull(k0);
+            this.v0 = Objects.requireNonNull(v0);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new Set12<>(new AbstractMap.SimpleImmutableEntry<>(this.k0, this.v0));
+        }
+
+        @Override
+        public V get(final Object o) {
+            return o.equals(this.k0) ? this.v0 : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object o) {
+            return o.equals(this.k0);
+        }
+
+        @Override
+        public boolean containsValue(final Object o) {
+            return o.equals(this.v0);
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.k0.hashCode() ^ this.v0.hashCode();
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_MAP, this.k0, this.v0);
+        }
+
+    }
+
+    static final class MapN<K, V> extends AbstractImmutableMap<K, V> {
+
+        private final Object[] table; // open addressing hash table of alternating keys and values
+        private final int size;
+
+        MapN(final Object... input) {
+            if ((input.length & 1) != 0) {
+                throw new InternalError("length is odd");
+            }
+            this.size = input.length >> 1;
+            this.table = new Object[EXPAND_FACTOR * input.length];
+            for (int i = 0; i < input.length; i += 2) {
+                final Object key = Objects.requireNonNull(input[i]);
+                final Object value = Objects.requireNonNull(input[i + 1]);
+                final int index = this.probe(key);
+                if (index >= 0) {
+                    throw new IllegalArgumentException("duplicate key: " + key);
+                }
+                this.table[-(index + 1)] = key;
+                this.table[-(index + 1) + 1] = value;
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new MapNEntrySet<>(this.table, this.size);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(final Object o) {
+            if (this.size == 0) {
+                Objects.requireNonNull(o);
+                return null;
+            }
+            final int index = this.probe(o);
+            return index >= 0 ? (V) this.table[index + 1] : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object o) {
+            Objects.requireNonNull(o);
+            return this.size > 0 && this.probe(o) >= 0;
+        }
+
+        @Override
+        public boolean containsValue(final Object o) {
+            Objects.requireNonNull(o);
+            for (int i = 1; i < this.table.length; i += 2) {
+                final Object value = this.table[i];
+                if (value != null && o.equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 0;
+            for (int i = 0; i < this.table.length; i += 2) {
+                final Object key = this.table[i];
+                if (key != null) {
+                    hash += key.hashCode() ^ this.table[i + 1].hashCode();
+                }
+            }
+            return hash;
+        }
+
+        // Returns the index of the key or -(insertion point + 1) if it is absent
+        private int probe(final Object key) {
+            int index = Math.floorMod(key.hashCode(), this.table.length >> 1) << 1;
+            while (true) {
+                final Object k = this.table[index];
+                if (k == null) {
+                    return -index - 1;
+                } else if (key.equals(k)) {
+                    return index;
+                } else if ((index += 2) == this.table.length) {
+                    index = 0;
+                }
+            }
+        }
+
+        private Object writeReplace() {
+            final Object[] keysAndValues = new Object[this.size << 1];
+            int index = 0;
+            for (int i = 0; i < this.table.length; i += 2) {
+                if (this.table[i] != null) {
+                    keysAndValues[index++] = this.table[i];
+                    keysAndValues[index++] = this.table[i + 1];
+                }
+            }
+            return new CollSer(CollSer.IMM_MAP, keysAndValues);
+        }
+
+    }
+
+    static final class MapNEntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+
+        private final Object[] table;
+        private final int size;
+
+        MapNEntrySet(final Object[] table, final int size) {
+            this.table = table;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new MapNItr<>(this.table);
+        }
+
+    }
+
+    static final class MapNItr<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Object[] table;
+        private int index;
+
+        MapNItr(final Object[] table) {
+            this.table = table;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.index < this.table.length && this.table[this.index] == null) {
+                this.index += 2;
+            }
+            return this.index < this.table.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) this.table[this.index], (V) this.table[this.index + 1]);
+            this.index += 2;
+            return entry;
+        }
+
+    }
+
+    static final class CollSer implements Serializable {
+
+        private static final long serialVersionUID = 6309168927139932177L;
+
+        static final int IMM_LIST = 1;
+        static final int IMM_SET = 2;
+        static final int IMM_MAP = 3;
+        static final int IMM_LIST_NULLS = 4;
+
+        private final int tag;
+        private final Object[] array;
+
+        CollSer(final int tag, final Object... array) {
+            this.tag = tag;
+            this.array = array;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            if (this.array == null) {
+                throw new InvalidObjectException("null array");
+            }
+            switch (this.tag) {
+                case IMM_LIST:
+                    return listOf(this.array);
+                case IMM_SET:
+                    return setOf(this.array);
+                case IMM_MAP:
+                    if (this.array.length == 0) {
+                        return EMPTY_MAP;
+                    } else if (this.array.length == 2) {
+                        return new Map1<>(this.array[0], this.array[1]);
+                    }
+                    return new MapN<>(this.array);
+                case IMM_LIST_NULLS:
+                    return listFromTrustedArrayNullsAllowed(this.array);
+                default:
+                    throw new InvalidObjectException(String.format("invalid flags 0x%x", this.tag));
+            }
+        }
+
+    }
+
+}
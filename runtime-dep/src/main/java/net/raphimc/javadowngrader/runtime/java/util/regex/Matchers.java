@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.raphimc.javadowngrader.runtime.java.util.regex;
+
+import java.util.regex.Matcher;
+
+public class Matchers {
+
+    private static final int MAX_RETAINED_CAPACITY = 65536;
+    private static final ThreadLocal<StringBuffer> BUFFER = ThreadLocal.withInitial(StringBuffer::new);
+
+    public static Matcher appendReplacement(final Matcher matcher, final StringBuilder sb, final String replacement) {
+        // The position of the last append is private in Java 8, so the StringBuffer overload has to do the work. The buffer is reused to avoid allocating a new one for every match.
+        final StringBuffer buffer = BUFFER.get();
+        try {
+            matcher.appendReplacement(buffer, replacement);
+            sb.append(buffer);
+        } finally {
+            release(buffer);
+        }
+        return matcher;
+    }
+
+    public static StringBuilder appendTail(final Matcher matcher, final StringBuilder sb) {
+        final StringBuffer buffer = BUFFER.get();
+        try {
+            matcher.appendTail(buffer);
+            sb.append(buffer);
+        } finally {
+            release(buffer);
+        }
+        return sb;
+    }
+
+    private static void release(final StringBuffer buffer) {
+        buffer.setLength(0);
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer.trimToSize();
+        }
+    }
+
+}
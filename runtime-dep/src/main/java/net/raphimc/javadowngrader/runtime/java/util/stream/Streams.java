@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.raphimc.javadowngrader.runtime.java.util.stream;
+
+import net.raphimc.javadowngrader.runtime.java.util.ImmutableCollections;
+
+import java.util.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+public class Streams {
+
+    public static <T> List<T> toList(final Stream<T> stream) {
+        // Stream.toArray already allocates an exactly sized array if the size of the stream is known
+        return ImmutableCollections.listFromTrustedArrayNullsAllowed(stream.toArray());
+    }
+
+    public static <T> Collector<T, ?, List<T>> toUnmodifiableList() {
+        return Collector.<T, ArrayAccumulator, List<T>>of(
+                ArrayAccumulator::new,
+                ArrayAccumulator::add,
+                ArrayAccumulator::addAll,
+                accumulator -> ImmutableCollections.listFromTrustedArray(accumulator.toArray())
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Collector<T, ?, Set<T>> toUnmodifiableSet() {
+        return Collector.<T, Set<T>, Set<T>>of(
+                HashSet::new,
+                Set::add,
+                (left, right) -> {
+                    if (left.size() < right.size()) {
+                        right.addAll(left);
+                        return right;
+                    }
+                    left.addAll(right);
+                    return left;
+                },
+                set -> (Set<T>) ImmutableCollections.setOf(set.toArray()),
+                Collector.Characteristics.UNORDERED
+        );
+    }
+
+    public static <T, K, U> Collector<T, ?, Map<K, U>> toUnmodifiableMap(final Function<? super T, ? extends K> keyMapper, final Function<? super T, ? extends U> valueMapper) {
+        Objects.requireNonNull(keyMapper, "keyMapper");
+        Objects.requireNonNull(valueMapper, "valueMapper");
+        return Collector.<T, Map<K, U>, Map<K, U>>of(
+                HashMap::new,
+                (map, element) -> putUnique(map, keyMapper.apply(element), valueMapper.apply(element)),
+                (left, right) -> {
+                    for (Map.Entry<K, U> entry : right.entrySet()) {
+                        putUnique(left, entry.getKey(), entry.getValue());
+                    }
+                    return left;
+                },
+                Streams::toUnmodifiableMap
+        );
+    }
+
+    public static <T, K, U> Collector<T, ?, Map<K, U>> toUnmodifiableMap(final Function<? super T, ? extends K> keyMapper, final Function<? super T, ? extends U> valueMapper, final BinaryOperator<U> mergeFunction) {
+        Objects.requireNonNull(keyMapper, "keyMapper");
+        Objects.requireNonNull(valueMapper, "valueMapper");
+        Objects.requireNonNull(mergeFunction, "mergeFunction");
+        return Collector.<T, Map<K, U>, Map<K, U>>of(
+                HashMap::new,
+                (map, element) -> map.merge(keyMapper.apply(element), valueMapper.apply(element), mergeFunction),
+                (left, right) -> {
+                    for (Map.Entry<K, U> entry : right.entrySet()) {
+                        left.merge(entry.getKey(), entry.getValue(), mergeFunction);
+                    }
+                    return left;
+                },
+                Streams::toUnmodifiableMap
+        );
+    }
+
+    private static <K, U> void putUnique(final Map<K, U> map, final K key, final U value) {
+        final U existing = map.putIfAbsent(key, Objects.requireNonNull(value));
+        if (existing != null) {
+            throw new IllegalStateException(String.format("Duplicate key %s (attempted merging values %s and %s)", key, existing, value));
+        }
+    }
+
+    private static <K, U> Map<K, U> toUnmodifiableMap(final Map<K, U> map) {
+        final Object[] keysAndValues = new Object[map.size() << 1];
+        int i = 0;
+        for (Map.Entry<K, U> entry : map.entrySet()) {
+            keysAndValues[i++] = entry.getKey();
+            keysAndValues[i++] = entry.getValue();
+        }
+        return ImmutableCollections.mapFromTrustedArray(keysAndValues);
+    }
+
+    /**
+     * Collects elements into an array which is handed to the list without copying it again if it is exactly full.
+     */
+    static final class ArrayAccumulator {
+
+        private static final Object[] EMPTY = new Object[0];
+
+        private Object[] elements = EMPTY;
+        private int size;
+
+        void add(final Object element) {
+            if (this.size == this.elements.length) {
+                this.elements = Arrays.copyOf(this.elements, Math.max(this.size + (this.size >> 1), 10));
+            }
+            this.elements[this.size++] = element;
+        }
+
+        ArrayAccumulator addAll(final ArrayAccumulator other) {
+            if (this.size + other.size > this.elements.length) {
+                this.elements = Arrays.copyOf(this.elements, this.size + other.size);
+            }
+            System.arraycopy(other.elements, 0, this.elements, this.size, other.size);
+            this.size += other.size;
+            return this;
+        }
+
+        Object[] toArray() {
+            return this.size == this.elements.length ? this.elements : Arrays.copyOf(this.elements, this.size);
+        }
+
+    }
+
+}
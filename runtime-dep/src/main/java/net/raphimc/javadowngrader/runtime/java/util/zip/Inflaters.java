@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.raphimc.javadowngrader.runtime.java.util.zip;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class Inflaters {
+
+    private static final int SCRATCH_SIZE = 65536;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+    public static void setInput(final Inflater inflater, final ByteBuffer input) {
+        // The inflater keeps a reference to the input array, so it has to be copied as the buffer counts as consumed after this call
+        final byte[] data = new byte[input.remaining()];
+        input.get(data);
+        inflater.setInput(data);
+    }
+
+    public static int inflate(final Inflater inflater, final ByteBuffer output) throws DataFormatException {
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        if (output.hasArray()) {
+            final int position = output.position();
+            final int written = inflater.inflate(output.array(), output.arrayOffset() + position, output.remaining());
+            output.position(position + written);
+            return written;
+        }
+
+        final byte[] scratch = SCRATCH.get();
+        int total = 0;
+        while (output.hasRemaining()) {
+            final int length = Math.min(output.remaining(), scratch.length);
+            final int written = inflater.inflate(scratch, 0, length);
+            output.put(scratch, 0, written);
+            total += written;
+            if (written < length) {
+                break;
+            }
+        }
+        return total;
+    }
+
+}
@@ -17,6 +17,7 @@
  */
 package net.raphimc.javadowngrader;
 
+import net.raphimc.javadowngrader.transformer.DowngradePlan;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.DowngradingTransformer;
 import net.raphimc.javadowngrader.transformer.j10.Java11ToJava10;
@@ -37,10 +38,13 @@ import org.objectweb.asm.tree.ClassNode;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JavaDowngrader {
 
     private static final List<DowngradingTransformer> TRANSFORMER = new ArrayList<>();
+    private static final Map<Integer, DowngradePlan> PLANS = new ConcurrentHashMap<>();
 
     static {
         TRANSFORMER.add(new Java22ToJava21());
@@ -84,12 +88,33 @@ public class JavaDowngrader {
      */
     public static DowngradeResult downgrade(final ClassNode classNode, final int targetVersion, final RuntimeDepCollector depCollector) {
         final DowngradeResult result = new DowngradeResult();
-        for (DowngradingTransformer transformer : TRANSFORMER) {
-            if (transformer.getTargetVersion() >= targetVersion && (classNode.version & 0xFF) > transformer.getTargetVersion()) {
-                transformer.transform(classNode, depCollector, result);
-            }
+        final DowngradePlan plan = getPlan(classNode.version & 0xFF, targetVersion);
+        if (plan != null) {
+            plan.transform(classNode, depCollector, result);
         }
         return result;
     }
 
+    /**
+     * Gets the {@link DowngradePlan} which downgrades classes of the source version to the target version
+     *
+     * @param sourceVersion The Java version of the input classes
+     * @param targetVersion The target Java version
+     * @return The {@link DowngradePlan} or null if no downgrading is required
+     */
+    public static DowngradePlan getPlan(final int sourceVersion, final int targetVersion) {
+        if (sourceVersion <= targetVersion) {
+            return null;
+        }
+        return PLANS.computeIfAbsent(sourceVersion << 16 | targetVersion, k -> {
+            final List<DowngradingTransformer> steps = new ArrayList<>();
+            for (DowngradingTransformer transformer : TRANSFORMER) {
+                if (transformer.getTargetVersion() >= targetVersion && sourceVersion > transformer.getTargetVersion()) {
+                    steps.add(transformer);
+                }
+            }
+            return steps.isEmpty() ? null : new DowngradePlan(steps);
+        });
+    }
+
 }
@@ -0,0 +1,265 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans the constant pool of raw class files for entries which require a {@link DowngradePlan} to do more than bumping the class version.
+ */
+final class ConstantPoolScanner {
+
+    static final int METHOD_CALLS = 1;
+    static final int CLASS_REPLACEMENTS = 2;
+    static final int HOOKS = 4;
+    static final int METHOD_HOOKS = 8;
+    static final int ALL = METHOD_CALLS | CLASS_REPLACEMENTS | HOOKS | METHOD_HOOKS;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    private final byte[][] constants;
+    private final int[] constantFlags;
+    private final int minLength;
+    private final int maxLength;
+    private final byte[][] replacedClasses;
+    private final byte[][][] methods;
+    private final byte[][] interfaces;
+    private final int accessTriggers;
+
+    /**
+     * @param constants       The UTF8 constants to look for mapped to the flags they set
+     * @param replacedClasses The internal names of the replaced classes which are also looked for in descriptors and signatures
+     * @param methods         The owner, name and descriptor (or null for any descriptor) of the replaced method references
+     * @param interfaces      The internal names of the interfaces which require methods to be inserted when implemented
+     * @param accessTriggers  The class access flags which set {@link #HOOKS}
+     */
+    ConstantPoolScanner(final Map<String, Integer> constants, final Collection<String> replacedClasses, final List<String[]> methods, final Collection<String> interfaces, final int accessTriggers) {
+        int size = 16;
+        while (size < constants.size() * 2) size <<= 1;
+        this.constants = new byte[size][];
+        this.constantFlags = new int[size];
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (Map.Entry<String, Integer> entry : constants.entrySet()) {
+            final byte[] bytes = bytes(entry.getKey());
+            minLength = Math.min(minLength, bytes.length);
+            maxLength = Math.max(maxLength, bytes.length);
+
+            int index = hash(bytes, 0, bytes.length) & (size - 1);
+            while (this.constants[index] != null) {
+                index = (index + 1) & (size - 1);
+            }
+            this.constants[index] = bytes;
+            this.constantFlags[index] = entry.getValue();
+        }
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+
+        size = 16;
+        while (size < methods.size() * 2) size <<= 1;
+        this.methods = new byte[size][][];
+        for (String[] method : methods) {
+            final byte[] owner = bytes(method[0]);
+            final byte[] name = bytes(method[1]);
+            int index = (31 * hash(owner, 0, owner.length) + hash(name, 0, name.length)) & (size - 1);
+            while (this.methods[index] != null) {
+                index = (index + 1) & (size - 1);
+            }
+            this.methods[index] = new byte[][]{owner, name, method[2] == null ? null : bytes(method[2])};
+        }
+
+        this.replacedClasses = replacedClasses.stream().map(ConstantPoolScanner::bytes).toArray(byte[][]::new);
+        this.interfaces = interfaces.stream().map(ConstantPoolScanner::bytes).toArray(byte[][]::new);
+        this.accessTriggers = accessTriggers;
+    }
+
+    /**
+     * @param bytecode The raw class file
+     * @return The flags of all found triggers or {@link #ALL} if the class file could not be scanned
+     */
+    int scan(final byte[] bytecode) {
+        try {
+            if (readInt(bytecode, 0) != 0xCAFEBABE) return ALL;
+
+            int flags = 0;
+            final int count = readUnsignedShort(bytecode, 8);
+            final int[] offsets = new int[count];
+            int offset = 10;
+            for (int i = 1; i < count; i++) {
+                offsets[i] = offset;
+                switch (bytecode[offset]) {
+                    case CONSTANT_UTF8:
+                        final int length = readUnsignedShort(bytecode, offset + 1);
+                        flags |= this.checkUtf8(bytecode, offset + 3, length);
+                        offset += 3 + length;
+                        break;
+                    case CONSTANT_CLASS:
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        offset += 3;
+                        break;
+                    case 15: // MethodHandle
+                        offset += 4;
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        offset += 5;
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        offset += 9;
+                        i++;
+                        break;
+                    default:
+                        return ALL;
+                }
+            }
+
+            if ((readUnsignedShort(bytecode, offset) & this.accessTriggers) != 0) {
+                flags |= HOOKS;
+            }
+            if (this.interfaces.length != 0) {
+                final int interfaceCount = readUnsignedShort(bytecode, offset + 6);
+                for (int i = 0; i < interfaceCount; i++) {
+                    final int name = offsets[readUnsignedShort(bytecode, offsets[readUnsignedShort(bytecode, offset + 8 + i * 2)] + 1)];
+                    if (contains(this.interfaces, bytecode, name + 3, readUnsignedShort(bytecode, name + 1))) {
+                        flags |= METHOD_CALLS;
+                    }
+                }
+            }
+
+            // Method handles and bootstrap methods reference the same Methodref entries as the invoke instructions
+            for (int i = 1; i < count && (flags & METHOD_CALLS) == 0; i++) {
+                final int tag = bytecode[offsets[i]];
+                if (tag == CONSTANT_METHODREF || tag == CONSTANT_INTERFACE_METHODREF) {
+                    final int owner = offsets[readUnsignedShort(bytecode, offsets[readUnsignedShort(bytecode, offsets[i] + 1)] + 1)];
+                    final int nameAndType = offsets[readUnsignedShort(bytecode, offsets[i] + 3)];
+                    final int name = offsets[readUnsignedShort(bytecode, nameAndType + 1)];
+                    final int descriptor = offsets[readUnsignedShort(bytecode, nameAndType + 3)];
+                    if (this.isReplacedMethod(bytecode, owner, name, descriptor)) {
+                        flags |= METHOD_CALLS;
+                    }
+                }
+            }
+            return flags;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return ALL;
+        }
+    }
+
+    private int checkUtf8(final byte[] bytecode, final int offset, final int length) {
+        int flags = 0;
+        if (length >= this.minLength && length <= this.maxLength) {
+            int index = hash(bytecode, offset, length) & (this.constants.length - 1);
+            byte[] constant;
+            while ((constant = this.constants[index]) != null) {
+                if (regionMatches(bytecode, offset, length, constant)) {
+                    flags = this.constantFlags[index];
+                    break;
+                }
+                index = (index + 1) & (this.constants.length - 1);
+            }
+        }
+        if ((flags & CLASS_REPLACEMENTS) == 0 && this.replacedClasses.length != 0 && this.containsReplacedClass(bytecode, offset, length)) {
+            flags |= CLASS_REPLACEMENTS;
+        }
+        return flags;
+    }
+
+    private boolean containsReplacedClass(final byte[] bytecode, final int offset, final int length) {
+        // Descriptors and signatures reference classes as "Lname;" or "Lname<...>;"
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytecode[i] != 'L') continue;
+
+            for (byte[] replacedClass : this.replacedClasses) {
+                final int nameEnd = i + 1 + replacedClass.length;
+                if (nameEnd >= end) continue;
+                if (bytecode[nameEnd] != ';' && bytecode[nameEnd] != '<') continue;
+                if (regionMatches(bytecode, i + 1, replacedClass.length, replacedClass)) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isReplacedMethod(final byte[] bytecode, final int owner, final int name, final int descriptor) {
+        final int ownerLength = readUnsignedShort(bytecode, owner + 1);
+        final int nameLength = readUnsignedShort(bytecode, name + 1);
+        int index = (31 * hash(bytecode, owner + 3, ownerLength) + hash(bytecode, name + 3, nameLength)) & (this.methods.length - 1);
+        byte[][] method;
+        while ((method = this.methods[index]) != null) {
+            if (regionMatches(bytecode, owner + 3, ownerLength, method[0]) && regionMatches(bytecode, name + 3, nameLength, method[1])) {
+                if (method[2] == null || regionMatches(bytecode, descriptor + 3, readUnsignedShort(bytecode, descriptor + 1), method[2])) {
+                    return true;
+                }
+            }
+            index = (index + 1) & (this.methods.length - 1);
+        }
+        return false;
+    }
+
+    private static boolean contains(final byte[][] values, final byte[] bytecode, final int offset, final int length) {
+        for (byte[] value : values) {
+            if (regionMatches(bytecode, offset, length, value)) return true;
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(final byte[] bytecode, final int offset, final int length, final byte[] constant) {
+        if (constant.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytecode[offset + i] != constant[i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(final byte[] bytes, final int offset, final int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[offset + i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int readUnsignedShort(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 8 | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+}
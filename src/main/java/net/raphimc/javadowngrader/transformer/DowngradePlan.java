@@ -0,0 +1,477 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import net.raphimc.javadowngrader.RuntimeDepCollector;
+import net.raphimc.javadowngrader.util.ASMUtil;
+import net.raphimc.javadowngrader.util.Constants;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * A compiled chain of {@link DowngradingTransformer}s covering a continuous version range.<br>
+ * The method call replacer, method inserter and class replacement tables of all steps are merged, so every method of a class is only walked once.
+ * Code emitted by a step is only processed by the steps after it, just like when running the steps one after another.<br>
+ * Class replacements of all steps are applied together after all method call replacers ran.
+ */
+public class DowngradePlan {
+
+    private static final String BRIDGE_PREFIX = "javadowngrader-bridge$";
+
+    private final List<DowngradingTransformer> steps;
+    private final int sourceVersion;
+    private final int targetVersion;
+
+    private final MethodIndex<StepEntry<MethodCallReplacer>> methodCallReplacers = new MethodIndex<>();
+    private final List<InserterEntry> methodInserters = new ArrayList<>();
+    private final Map<String, StepEntry<DowngradingTransformer.ClassReplacement>> classReplacements = new HashMap<>();
+    private final Set<String> methodTriggers = new HashSet<>();
+    private final ConstantPoolScanner scanner;
+
+    /**
+     * @param steps The transformers to chain, ordered from the highest to the lowest version
+     */
+    public DowngradePlan(final List<DowngradingTransformer> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Downgrade plan requires at least one step");
+        }
+        for (int i = 1; i < steps.size(); i++) {
+            if (steps.get(i - 1).getTargetVersion() != steps.get(i).getSourceVersion()) {
+                throw new IllegalArgumentException("Downgrade plan steps must form a continuous version range");
+            }
+        }
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.sourceVersion = steps.get(0).getSourceVersion();
+        this.targetVersion = steps.get(steps.size() - 1).getTargetVersion();
+
+        for (int step = steps.size() - 1; step >= 0; step--) {
+            final DowngradingTransformer transformer = steps.get(step);
+            final int currentStep = step;
+            transformer.getMethodCallReplacers().forEach((owner, name, descriptor, replacer) -> {
+                final MethodIndex.Entry<StepEntry<MethodCallReplacer>> existing = this.methodCallReplacers.get(owner, name);
+                final StepEntry<MethodCallReplacer> next = existing == null ? null : (descriptor == null ? existing.getAny() : existing.get(descriptor));
+                this.methodCallReplacers.put(owner, name, descriptor, new StepEntry<>(replacer, currentStep, next));
+            });
+            for (Map.Entry<String, DowngradingTransformer.ClassReplacement> entry : transformer.getClassReplacements().entrySet()) {
+                this.classReplacements.put(entry.getKey(), new StepEntry<>(entry.getValue(), step, this.classReplacements.get(entry.getKey())));
+            }
+        }
+        for (int step = 0; step < steps.size(); step++) {
+            final int currentStep = step;
+            steps.get(step).getMethodInserters().forEach((owner, name, descriptor, inserter) -> {
+                this.methodInserters.add(new InserterEntry(owner, name, descriptor, inserter, currentStep));
+            });
+            this.methodTriggers.addAll(steps.get(step).getMethodTriggers());
+        }
+        this.scanner = this.createScanner();
+    }
+
+    private ConstantPoolScanner createScanner() {
+        final Map<String, Integer> constants = new HashMap<>();
+        int accessTriggers = 0;
+        for (DowngradingTransformer step : this.steps) {
+            // Without declared triggers there is no way to know when the hooks of a step are required
+            if (step.hasUndeclaredHooks()) return null;
+
+            for (String trigger : step.getTriggers()) {
+                constants.merge(trigger, ConstantPoolScanner.HOOKS, (a, b) -> a | b);
+            }
+            accessTriggers |= step.getAccessTriggers();
+        }
+        for (String methodTrigger : this.methodTriggers) {
+            constants.merge(methodTrigger, ConstantPoolScanner.METHOD_HOOKS, (a, b) -> a | b);
+        }
+        for (String replacedClass : this.classReplacements.keySet()) {
+            constants.merge(replacedClass, ConstantPoolScanner.CLASS_REPLACEMENTS, (a, b) -> a | b);
+        }
+        final List<String[]> methods = new ArrayList<>();
+        this.methodCallReplacers.forEach((owner, name, descriptor, replacer) -> methods.add(new String[]{owner, name, descriptor}));
+        final Set<String> interfaces = new HashSet<>();
+        for (InserterEntry inserter : this.methodInserters) {
+            interfaces.add(inserter.owner);
+        }
+        return new ConstantPoolScanner(constants, this.classReplacements.keySet(), methods, interfaces, accessTriggers);
+    }
+
+    public void transform(final ClassNode classNode, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        this.transform(classNode, ConstantPoolScanner.ALL, depCollector, result);
+    }
+
+    /**
+     * Downgrades a class which was read from the given class file.<br>
+     * Parts of the plan which are not referenced by the constant pool of the class file are skipped.
+     *
+     * @param classNode    The class to downgrade
+     * @param bytecode     The raw class file the class was read from
+     * @param depCollector The {@link RuntimeDepCollector} to use to collect runtime dependencies
+     * @param result       The {@link DowngradeResult} to add to
+     */
+    public void transform(final ClassNode classNode, final byte[] bytecode, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        this.transform(classNode, this.scanner == null ? ConstantPoolScanner.ALL : this.scanner.scan(bytecode), depCollector, result);
+    }
+
+    private void transform(final ClassNode classNode, final int flags, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        if ((classNode.version & 0xFF) > this.sourceVersion) {
+            throw new IllegalArgumentException("Input class version is higher than supported");
+        }
+        if ((classNode.version & 0xFF) <= this.targetVersion) {
+            return;
+        }
+
+        if ((flags & ConstantPoolScanner.HOOKS) != 0) {
+            for (DowngradingTransformer step : this.steps) {
+                step.preTransform(classNode, result);
+            }
+        }
+
+        if ((flags & (ConstantPoolScanner.METHOD_CALLS | ConstantPoolScanner.METHOD_HOOKS | ConstantPoolScanner.HOOKS)) != 0) {
+            this.transformMethods(classNode, null, depCollector, result);
+        }
+
+        if (!this.classReplacements.isEmpty() && (flags & ConstantPoolScanner.CLASS_REPLACEMENTS) != 0) {
+            this.replaceClasses(classNode, depCollector, result);
+        }
+
+        if ((flags & ConstantPoolScanner.HOOKS) != 0) {
+            for (DowngradingTransformer step : this.steps) {
+                step.postTransform(classNode, result);
+            }
+        }
+
+        classNode.version = this.targetVersion;
+    }
+
+    /**
+     * Scans the constant pool of the given class file for anything this plan would transform.<br>
+     * If this returns false, downgrading the class only changes its version.
+     *
+     * @param bytecode The raw class file
+     * @return If the class has to go through {@link #transform}
+     * @throws IllegalArgumentException If the class version is higher than the plan supports
+     */
+    public boolean requiresTransformation(final byte[] bytecode) {
+        final int version = (bytecode[6] & 0xFF) << 8 | (bytecode[7] & 0xFF);
+        if (version > this.sourceVersion) {
+            throw new IllegalArgumentException("Input class version is higher than supported");
+        }
+        return this.scanner == null || this.scanner.scan(bytecode) != 0;
+    }
+
+    /**
+     * Prepares downgrading the given class file without reading it into a {@link ClassNode}.<br>
+     * This is only possible if the plan does not have to transform the class as a whole (e.g. replace classes or run class level hooks).
+     *
+     * @param bytecode     The raw class file
+     * @param depCollector The {@link RuntimeDepCollector} to use to collect runtime dependencies
+     * @return The {@link StreamingDowngrade} or null if the class has to go through {@link #transform}
+     */
+    public StreamingDowngrade prepare(final byte[] bytecode, final RuntimeDepCollector depCollector) {
+        final int version = (bytecode[6] & 0xFF) << 8 | (bytecode[7] & 0xFF);
+        if (version > this.sourceVersion) {
+            throw new IllegalArgumentException("Input class version is higher than supported");
+        }
+        if (version <= this.targetVersion || this.scanner == null) {
+            return null;
+        }
+        if ((this.scanner.scan(bytecode) & (ConstantPoolScanner.CLASS_REPLACEMENTS | ConstantPoolScanner.HOOKS)) != 0) {
+            return null;
+        }
+        return new StreamingDowngrade(this, new ClassReader(bytecode), depCollector);
+    }
+
+    public List<DowngradingTransformer> getSteps() {
+        return this.steps;
+    }
+
+    public int getSourceVersion() {
+        return this.sourceVersion;
+    }
+
+    public int getTargetVersion() {
+        return this.targetVersion;
+    }
+
+    /**
+     * @param classNode          The class to transform
+     * @param transformedMethods The indices of the methods to transform or null to transform all methods
+     */
+    void transformMethods(final ClassNode classNode, final BitSet transformedMethods, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        final ClassState state = new ClassState(classNode, depCollector, result);
+        for (final MethodNode methodNode : classNode.methods) {
+            if (methodNode.name.startsWith(BRIDGE_PREFIX)) {
+                state.bridge = Integer.parseInt(methodNode.name.substring(BRIDGE_PREFIX.length())) + 1;
+            }
+        }
+
+        final int methodCount = classNode.methods.size();
+        for (int i = 0; i < methodCount; i++) {
+            if (transformedMethods != null && !transformedMethods.get(i)) continue;
+
+            final MethodContext context = new MethodContext(classNode, classNode.methods.get(i));
+            for (DowngradingTransformer step : this.steps) {
+                step.transformMethod(context, result);
+            }
+            if (!this.methodCallReplacers.isEmpty()) {
+                this.transformInstructions(state, context, context.getMethodNode().instructions.getFirst(), null, 0);
+            }
+        }
+
+        for (InserterEntry inserter : this.methodInserters) {
+            if (!classNode.interfaces.contains(inserter.owner)) continue;
+            if (ASMUtil.hasMethod(classNode, inserter.name, inserter.desc)) continue;
+
+            final int insertedIndex = classNode.methods.size();
+            final MethodNode insertedMethod = new MethodNode(Opcodes.ACC_PUBLIC, inserter.name, inserter.desc, null, null);
+            final DowngradeResult inserterResult = new DowngradeResult();
+            inserter.inserter.insert(classNode, insertedMethod, depCollector, inserterResult);
+            classNode.methods.add(insertedMethod);
+            result.addMethodResult(inserterResult, insertedMethod, classNode.methods.subList(insertedIndex, classNode.methods.size()));
+            result.incrementTransformerCount();
+            this.transformAddedMethods(state, insertedIndex, inserter.step + 1);
+        }
+
+        for (MethodNode methodNode : state.relativeFrameMethods) {
+            if (result.requiresClassStackMapFrames() || result.getStackMapFrameMethods().contains(methodNode)) continue;
+
+            try {
+                RelativeFrameResolver.resolve(classNode.name, methodNode);
+            } catch (RuntimeException e) {
+                // The existing frames of the method can't be followed to the replacement, so they have to be recalculated
+                result.setRequiresStackMapFrames(methodNode);
+            }
+        }
+    }
+
+    /**
+     * @return If a method containing a call to the given method has to be transformed
+     */
+    boolean isTransformedCall(final String owner, final String name, final String desc) {
+        return this.methodTriggers.contains(owner) || this.getMethodCallReplacer(owner, name, desc, 0) != null;
+    }
+
+    /**
+     * @return If a method containing the given invokedynamic instruction has to be transformed
+     */
+    boolean isTransformedInvokeDynamic(final Handle bsm, final Object[] bsmArgs) {
+        if (this.methodTriggers.contains(bsm.getOwner())) return true;
+        if (!bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory") || !bsm.getName().equals("metafactory") || !bsm.getDesc().equals(Constants.METAFACTORY_DESC)) {
+            return false;
+        }
+        for (Object arg : bsmArgs) {
+            if (!(arg instanceof Handle)) continue;
+            final Handle handle = (Handle) arg;
+            if (this.isTransformedCall(handle.getOwner(), handle.getName(), handle.getDesc())) return true;
+        }
+        return false;
+    }
+
+    private void transformInstructions(final ClassState state, final MethodContext context, final AbstractInsnNode from, final AbstractInsnNode to, final int minStep) {
+        final ClassNode classNode = state.classNode;
+        final MethodNode methodNode = context.getMethodNode();
+        AbstractInsnNode insn = from;
+        while (insn != to) {
+            final AbstractInsnNode next = insn.getNext();
+            if (insn instanceof MethodInsnNode) {
+                final MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                final StepEntry<MethodCallReplacer> replacer = this.getMethodCallReplacer(methodInsn.owner, methodInsn.name, methodInsn.desc, minStep);
+                if (replacer != null) {
+                    final AbstractInsnNode previous = methodInsn.getPrevious();
+                    final int methodCount = classNode.methods.size();
+                    final DowngradeResult replacerResult = new DowngradeResult();
+                    final InsnList replacement = replacer.value.getReplacement(context, methodInsn.name, methodInsn.desc, state.depCollector, replacerResult);
+                    if (RelativeFrameNode.bind(replacement)) {
+                        state.relativeFrameMethods.add(methodNode);
+                    }
+                    context.reserveLocals(replacement);
+                    methodNode.instructions.insertBefore(methodInsn, replacement);
+                    methodNode.instructions.remove(methodInsn);
+                    state.result.addMethodResult(replacerResult, methodNode, classNode.methods.subList(methodCount, classNode.methods.size()));
+                    state.result.incrementTransformerCount();
+
+                    // Code emitted by a step is only visible to the steps after it
+                    this.transformAddedMethods(state, methodCount, replacer.step + 1);
+                    this.transformInstructions(state, context, previous == null ? methodNode.instructions.getFirst() : previous.getNext(), next, replacer.step + 1);
+                }
+            } else if (insn instanceof InvokeDynamicInsnNode) {
+                final InvokeDynamicInsnNode invokeDynamicInsn = (InvokeDynamicInsnNode) insn;
+
+                if (invokeDynamicInsn.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory") && invokeDynamicInsn.bsm.getName().equals("metafactory") && invokeDynamicInsn.bsm.getDesc().equals(Constants.METAFACTORY_DESC)) {
+                    for (int i = 0; i < invokeDynamicInsn.bsmArgs.length; i++) {
+                        final Object arg = invokeDynamicInsn.bsmArgs[i];
+                        if (!(arg instanceof Handle)) continue;
+                        final Handle handle = (Handle) arg;
+
+                        final StepEntry<MethodCallReplacer> replacer = this.getMethodCallReplacer(handle.getOwner(), handle.getName(), handle.getDesc(), minStep);
+                        if (replacer != null) {
+                            // The same method reference (e.g. String::strip) often appears many times in a class
+                            final BridgeKey bridgeKey = new BridgeKey(handle, replacer.step);
+                            MethodNode bridgeMethod = state.bridges.get(bridgeKey);
+                            if (bridgeMethod == null) {
+                                final int methodCount = classNode.methods.size();
+                                final String desc = handle.getTag() == Opcodes.H_INVOKESTATIC || handle.getTag() == Opcodes.H_GETSTATIC || handle.getTag() == Opcodes.H_PUTSTATIC
+                                        ? handle.getDesc()
+                                        : "(L" + handle.getOwner() + ';' + handle.getDesc().substring(1);
+                                bridgeMethod = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, BRIDGE_PREFIX + (state.bridge++), desc, null, null);
+                                final Type[] argumentTypes = Type.getArgumentTypes(desc);
+                                for (int i1 = 0; i1 < argumentTypes.length; i1++) {
+                                    bridgeMethod.instructions.add(new VarInsnNode(argumentTypes[i1].getOpcode(Opcodes.ILOAD), i1));
+                                }
+                                final DowngradeResult replacerResult = new DowngradeResult();
+                                final InsnList replacement = replacer.value.getReplacement(new MethodContext(classNode, bridgeMethod), handle.getName(), handle.getDesc(), state.depCollector, replacerResult);
+                                if (RelativeFrameNode.bind(replacement)) {
+                                    state.relativeFrameMethods.add(bridgeMethod);
+                                }
+                                bridgeMethod.instructions.add(replacement);
+                                bridgeMethod.instructions.add(new InsnNode(Type.getReturnType(handle.getDesc()).getOpcode(Opcodes.IRETURN)));
+                                classNode.methods.add(bridgeMethod);
+                                state.bridges.put(bridgeKey, bridgeMethod);
+                                state.result.addMethodResult(replacerResult, bridgeMethod, classNode.methods.subList(methodCount, classNode.methods.size()));
+
+                                this.transformAddedMethods(state, methodCount, replacer.step + 1);
+                            }
+
+                            invokeDynamicInsn.bsmArgs[i] = new Handle(Opcodes.H_INVOKESTATIC, classNode.name, bridgeMethod.name, bridgeMethod.desc, (classNode.access & Opcodes.ACC_INTERFACE) != 0);
+                            state.result.incrementTransformerCount();
+                        }
+                    }
+                }
+            }
+            insn = next;
+        }
+    }
+
+    private void transformAddedMethods(final ClassState state, final int from, final int minStep) {
+        if (minStep >= this.steps.size()) return;
+
+        final int to = state.classNode.methods.size();
+        for (int i = from; i < to; i++) {
+            final MethodNode methodNode = state.classNode.methods.get(i);
+            this.transformInstructions(state, new MethodContext(state.classNode, methodNode), methodNode.instructions.getFirst(), null, minStep);
+        }
+    }
+
+    private StepEntry<MethodCallReplacer> getMethodCallReplacer(final String owner, final String name, final String desc, final int minStep) {
+        final MethodIndex.Entry<StepEntry<MethodCallReplacer>> entry = this.methodCallReplacers.get(owner, name);
+        if (entry == null) return null;
+
+        final StepEntry<MethodCallReplacer> exact = StepEntry.first(entry.get(desc), minStep);
+        final StepEntry<MethodCallReplacer> named = StepEntry.first(entry.getAny(), minStep);
+        if (exact == null) return named;
+        if (named == null) return exact;
+        return named.step < exact.step ? named : exact;
+    }
+
+    private void replaceClasses(final ClassNode classNode, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        new InPlaceRemapper(new Remapper() {
+            @Override
+            public String map(String internalName) {
+                // Replacements of later steps apply to the names produced by earlier steps
+                String name = internalName;
+                int step = 0;
+                StepEntry<DowngradingTransformer.ClassReplacement> entry;
+                while ((entry = StepEntry.first(classReplacements.get(name), step)) != null) {
+                    entry.value.collectDependencies(depCollector);
+                    name = entry.value.getNewName();
+                    step = entry.step + 1;
+                }
+                return name;
+            }
+        }, this.classReplacements.keySet()).remap(classNode);
+    }
+
+    private static final class StepEntry<T> {
+        private final T value;
+        private final int step;
+        private final StepEntry<T> next;
+
+        private StepEntry(final T value, final int step, final StepEntry<T> next) {
+            this.value = value;
+            this.step = step;
+            this.next = next;
+        }
+
+        private static <T> StepEntry<T> first(StepEntry<T> entry, final int minStep) {
+            while (entry != null && entry.step < minStep) {
+                entry = entry.next;
+            }
+            return entry;
+        }
+    }
+
+    private static final class InserterEntry {
+        private final String owner;
+        private final String name;
+        private final String desc;
+        private final MethodInserter inserter;
+        private final int step;
+
+        private InserterEntry(final String owner, final String name, final String desc, final MethodInserter inserter, final int step) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.inserter = inserter;
+            this.step = step;
+        }
+    }
+
+    private static final class BridgeKey {
+        private final Handle handle;
+        private final int step;
+
+        private BridgeKey(final Handle handle, final int step) {
+            this.handle = handle;
+            this.step = step;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BridgeKey)) return false;
+            final BridgeKey other = (BridgeKey) o;
+            return this.step == other.step && this.handle.equals(other.handle);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.handle.hashCode() * 31 + this.step;
+        }
+    }
+
+    private static final class ClassState {
+        private final ClassNode classNode;
+        private final RuntimeDepCollector depCollector;
+        private final DowngradeResult result;
+        private final Set<MethodNode> relativeFrameMethods = new LinkedHashSet<>();
+        private final Map<BridgeKey, MethodNode> bridges = new HashMap<>();
+        private int bridge = 100;
+
+        private ClassState(final ClassNode classNode, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+            this.classNode = classNode;
+            this.depCollector = depCollector;
+            this.result = result;
+        }
+    }
+
+}
@@ -17,10 +17,17 @@
  */
 package net.raphimc.javadowngrader.transformer;
 
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 public class DowngradeResult {
 
     private int transformerCount;
     private boolean requiresStackMapFrames;
+    private final Set<MethodNode> stackMapFrameMethods = Collections.newSetFromMap(new IdentityHashMap<>());
 
     /**
      * @return The amount of transformers that were applied
@@ -37,19 +44,44 @@ public class DowngradeResult {
     }
 
     /**
-     * @return If the class requires stack map frame recalculation
+     * @return If the class or any of its methods requires stack map frame recalculation
      */
     public boolean requiresStackMapFrames() {
+        return this.requiresStackMapFrames || !this.stackMapFrameMethods.isEmpty();
+    }
+
+    /**
+     * @return If the stack map frames of all methods of the class have to be recalculated
+     */
+    public boolean requiresClassStackMapFrames() {
         return this.requiresStackMapFrames;
     }
 
     /**
-     * Sets the class to require stack map frame recalculation.
+     * @return The methods which require stack map frame recalculation if not the whole class does
+     */
+    public Set<MethodNode> getStackMapFrameMethods() {
+        return Collections.unmodifiableSet(this.stackMapFrameMethods);
+    }
+
+    /**
+     * Sets the class to require stack map frame recalculation.<br>
+     * When called by a {@link MethodCallReplacer} or {@link MethodInserter} this only applies to the transformed method and the methods added by it.
+     * Replacers which only emit branches should describe their frames with {@link RelativeFrameNode}s instead.
      */
     public void setRequiresStackMapFrames() {
         this.requiresStackMapFrames = true;
     }
 
+    /**
+     * Sets the given method to require stack map frame recalculation.
+     *
+     * @param methodNode The method whose control flow or local/stack types changed
+     */
+    public void setRequiresStackMapFrames(final MethodNode methodNode) {
+        this.stackMapFrameMethods.add(methodNode);
+    }
+
     /**
      * Adds the values of the given result to this result.
      *
@@ -58,6 +90,26 @@ public class DowngradeResult {
     public void add(final DowngradeResult result) {
         this.transformerCount += result.transformerCount;
         this.requiresStackMapFrames |= result.requiresStackMapFrames;
+        this.stackMapFrameMethods.addAll(result.stackMapFrameMethods);
+    }
+
+    /**
+     * Adds the values of the result of a single method transformation to this result.<br>
+     * Stack map frames requested for the whole class only apply to the transformed method and the methods added by the transformation.
+     *
+     * @param result       The result of the method transformation
+     * @param methodNode   The transformed method
+     * @param addedMethods The methods added to the class by the transformation
+     */
+    void addMethodResult(final DowngradeResult result, final MethodNode methodNode, final Iterable<MethodNode> addedMethods) {
+        this.transformerCount += result.transformerCount;
+        this.stackMapFrameMethods.addAll(result.stackMapFrameMethods);
+        if (result.requiresStackMapFrames) {
+            this.stackMapFrameMethods.add(methodNode);
+            for (MethodNode addedMethod : addedMethods) {
+                this.stackMapFrameMethods.add(addedMethod);
+            }
+        }
     }
 
 }
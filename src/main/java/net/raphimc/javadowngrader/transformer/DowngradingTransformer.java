@@ -18,30 +18,26 @@
 package net.raphimc.javadowngrader.transformer;
 
 import net.raphimc.javadowngrader.RuntimeDepCollector;
-import net.raphimc.javadowngrader.util.ASMUtil;
 import net.raphimc.javadowngrader.util.Constants;
-import org.objectweb.asm.Handle;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.commons.ClassRemapper;
-import org.objectweb.asm.commons.Remapper;
-import org.objectweb.asm.tree.*;
-
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.reflect.Method;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public abstract class DowngradingTransformer {
 
-    private static final String BRIDGE_PREFIX = "javadowngrader-bridge$";
-
     private final int sourceVersion;
     private final int targetVersion;
 
-    private final Map<String, MethodCallReplacer> methodCallReplacers = new HashMap<>();
-    private final Map<String, MethodInserter> methodInserters = new HashMap<>();
+    private final MethodIndex<MethodCallReplacer> methodCallReplacers = new MethodIndex<>();
+    private final MethodIndex<MethodInserter> methodInserters = new MethodIndex<>();
     private final Map<String, ClassReplacement> classReplacements = new HashMap<>();
+    private final Set<String> triggers = new HashSet<>();
+    private int accessTriggers;
+    private final Set<String> methodTriggers = new HashSet<>();
+
+    private volatile DowngradePlan plan;
 
     public DowngradingTransformer(final int sourceVersion, final int targetVersion) {
         this.sourceVersion = sourceVersion;
@@ -53,15 +49,15 @@ public abstract class DowngradingTransformer {
     }
 
     protected void addMethodCallReplacer(final int opcode, final String owner, final String name, final MethodCallReplacer replacer) {
-        this.methodCallReplacers.put(owner + '.' + name, replacer);
+        this.methodCallReplacers.put(owner, name, null, replacer);
     }
 
     protected void addMethodCallReplacer(final int opcode, final String owner, final String name, final String descriptor, final MethodCallReplacer replacer) {
-        this.methodCallReplacers.put(owner + '.' + name + descriptor, replacer);
+        this.methodCallReplacers.put(owner, name, descriptor, replacer);
     }
 
     protected void addMethodInserter(final String owner, final String name, final String descriptor, final MethodInserter inserter) {
-        this.methodInserters.put(owner + '.' + name + descriptor, inserter);
+        this.methodInserters.put(owner, name, descriptor, inserter);
     }
 
     protected void addClassReplacement(final String name, final ClassReplacement replacement) {
@@ -76,140 +72,96 @@ public abstract class DowngradingTransformer {
         addClassReplacement(name, ClassReplacement.ofRuntime(name, extraDeps));
     }
 
+    /**
+     * Registers a constant pool entry which requires the {@link #preTransform} or {@link #postTransform} hooks of this transformer to run.<br>
+     * Classes without any trigger, method call replacer owner, method inserter owner or replaced class only get their version changed.
+     *
+     * @param constant The UTF8 constant, e.g. a class or attribute name
+     */
+    protected void addTrigger(final String constant) {
+        this.triggers.add(constant);
+    }
+
+    /**
+     * Registers class access flags which require the {@link #preTransform} or {@link #postTransform} hooks of this transformer to run.
+     *
+     * @param access The access flags
+     * @see #addTrigger(String)
+     */
+    protected void addAccessTrigger(final int access) {
+        this.accessTriggers |= access;
+    }
+
+    /**
+     * Registers a class whose references require the {@link #transformMethod} hook of this transformer to run on the referencing method.<br>
+     * Unlike class level triggers, this allows all other methods of the class to be copied without being transformed.
+     *
+     * @param owner The internal name of the class referenced by method calls, method handles or bootstrap methods
+     */
+    protected void addMethodTrigger(final String owner) {
+        this.methodTriggers.add(owner);
+    }
+
     public void transform(final ClassNode classNode, final DowngradeResult result) {
         transform(classNode, RuntimeDepCollector.NULL, result);
     }
 
     public void transform(final ClassNode classNode, final RuntimeDepCollector depCollector, final DowngradeResult result) {
-        if ((classNode.version & 0xFF) > this.sourceVersion) {
-            throw new IllegalArgumentException("Input class version is higher than supported");
+        DowngradePlan plan = this.plan;
+        if (plan == null) {
+            this.plan = plan = new DowngradePlan(Collections.singletonList(this));
         }
-        if ((classNode.version & 0xFF) <= this.targetVersion) {
-            return;
-        }
-
-        this.preTransform(classNode, result);
+        plan.transform(classNode, depCollector, result);
+    }
 
-        int bridge = 100;
-        for (final MethodNode methodNode : classNode.methods) {
-            if (methodNode.name.startsWith(BRIDGE_PREFIX)) {
-                bridge = Integer.parseInt(methodNode.name.substring(BRIDGE_PREFIX.length())) + 1;
-            }
-        }
+    protected void preTransform(final ClassNode classNode, final DowngradeResult result) {
+    }
 
-        if (!this.methodCallReplacers.isEmpty()) {
-            for (MethodNode methodNode : new ArrayList<>(classNode.methods)) {
-                for (AbstractInsnNode insn : methodNode.instructions.toArray()) {
-                    if (insn instanceof MethodInsnNode) {
-                        final MethodInsnNode methodInsn = (MethodInsnNode) insn;
-
-                        MethodCallReplacer replacer = this.methodCallReplacers.get(methodInsn.owner + '.' + methodInsn.name + methodInsn.desc);
-                        if (replacer == null) {
-                            replacer = this.methodCallReplacers.get(methodInsn.owner + '.' + methodInsn.name);
-                        }
-                        if (replacer != null) {
-                            methodNode.instructions.insertBefore(
-                                    methodInsn, replacer.getReplacement(classNode, methodNode, methodInsn.name, methodInsn.desc, depCollector, result)
-                            );
-                            methodNode.instructions.remove(methodInsn);
-
-                            result.incrementTransformerCount();
-                        }
-                    } else if (insn instanceof InvokeDynamicInsnNode) {
-                        final InvokeDynamicInsnNode invokeDynamicInsn = (InvokeDynamicInsnNode) insn;
-
-                        if (invokeDynamicInsn.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory") && invokeDynamicInsn.bsm.getName().equals("metafactory") && invokeDynamicInsn.bsm.getDesc().equals(Constants.METAFACTORY_DESC)) {
-                            for (int i = 0; i < invokeDynamicInsn.bsmArgs.length; i++) {
-                                final Object arg = invokeDynamicInsn.bsmArgs[i];
-                                if (!(arg instanceof Handle)) continue;
-                                final Handle handle = (Handle) arg;
-
-                                MethodCallReplacer replacer = this.methodCallReplacers.get(handle.getOwner() + '.' + handle.getName() + handle.getDesc());
-                                if (replacer == null) {
-                                    replacer = this.methodCallReplacers.get(handle.getOwner() + '.' + handle.getName());
-                                }
-                                if (replacer != null) {
-                                    final String desc = handle.getTag() == Opcodes.H_INVOKESTATIC || handle.getTag() == Opcodes.H_GETSTATIC || handle.getTag() == Opcodes.H_PUTSTATIC
-                                            ? handle.getDesc()
-                                            : "(L" + handle.getOwner() + ';' + handle.getDesc().substring(1);
-                                    final MethodNode bridgeMethod = new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, BRIDGE_PREFIX + (bridge++), desc, null, null);
-                                    final Type[] argumentTypes = Type.getArgumentTypes(desc);
-                                    for (int i1 = 0; i1 < argumentTypes.length; i1++) {
-                                        bridgeMethod.instructions.add(new VarInsnNode(argumentTypes[i1].getOpcode(Opcodes.ILOAD), i1));
-                                    }
-                                    bridgeMethod.instructions.add(replacer.getReplacement(
-                                            classNode, bridgeMethod, handle.getName(), handle.getDesc(), depCollector, result
-                                    ));
-                                    bridgeMethod.instructions.add(new InsnNode(Type.getReturnType(handle.getDesc()).getOpcode(Opcodes.IRETURN)));
-                                    classNode.methods.add(bridgeMethod);
-
-                                    invokeDynamicInsn.bsmArgs[i] = new Handle(Opcodes.H_INVOKESTATIC, classNode.name, bridgeMethod.name, bridgeMethod.desc, (classNode.access & Opcodes.ACC_INTERFACE) != 0);
-                                    result.incrementTransformerCount();
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    protected void postTransform(final ClassNode classNode, final DowngradeResult result) {
+    }
 
-        for (Map.Entry<String, MethodInserter> entry : this.methodInserters.entrySet()) {
-            final String[] split = entry.getKey().split("\\.", 2);
-            final String owner = split[0];
-            final String methodName = split[1].substring(0, split[1].indexOf('('));
-            final String methodDesc = split[1].substring(split[1].indexOf('('));
+    protected void transformMethod(final MethodContext context, final DowngradeResult result) {
+    }
 
-            if (!classNode.interfaces.contains(owner)) continue;
-            if (ASMUtil.hasMethod(classNode, methodName, methodDesc)) continue;
+    MethodIndex<MethodCallReplacer> getMethodCallReplacers() {
+        return this.methodCallReplacers;
+    }
 
-            final MethodNode insertedMethod = new MethodNode(Opcodes.ACC_PUBLIC, methodName, methodDesc, null, null);
-            entry.getValue().insert(classNode, insertedMethod, depCollector, result);
-            classNode.methods.add(insertedMethod);
-            result.incrementTransformerCount();
-        }
+    MethodIndex<MethodInserter> getMethodInserters() {
+        return this.methodInserters;
+    }
 
-        if (!this.classReplacements.isEmpty()) {
-            final ClassNode remappedNode = new ClassNode();
-            final ClassRemapper classRemapper = new ClassRemapper(remappedNode, new Remapper() {
-                @Override
-                public String map(String internalName) {
-                    final ClassReplacement replacement = classReplacements.get(internalName);
-                    if (replacement == null) {
-                        return internalName;
-                    }
-                    result.setRequiresStackMapFrames();
-                    if (replacement.includeDependency) {
-                        depCollector.accept(replacement.newName);
-                        replacement.extraDependencies.forEach(depCollector);
-                    }
-                    return replacement.newName;
-                }
-            });
-            classNode.accept(classRemapper);
-
-            // Modify the class inplace
-            for (Field field : ClassNode.class.getDeclaredFields()) {
-                if (Modifier.isStatic(field.getModifiers())) continue;
-                if (Modifier.isFinal(field.getModifiers())) continue;
-                if (!Modifier.isPublic(field.getModifiers())) continue;
-
-                try {
-                    field.set(classNode, field.get(remappedNode));
-                } catch (Throwable t) {
-                    throw new RuntimeException("Failed to merge class nodes", t);
-                }
-            }
-        }
+    Map<String, ClassReplacement> getClassReplacements() {
+        return this.classReplacements;
+    }
 
-        this.postTransform(classNode, result);
+    Set<String> getTriggers() {
+        return this.triggers;
+    }
 
-        classNode.version = this.targetVersion;
+    int getAccessTriggers() {
+        return this.accessTriggers;
     }
 
-    protected void preTransform(final ClassNode classNode, final DowngradeResult result) {
+    Set<String> getMethodTriggers() {
+        return this.methodTriggers;
     }
 
-    protected void postTransform(final ClassNode classNode, final DowngradeResult result) {
+    boolean hasUndeclaredHooks() {
+        final boolean classTriggers = !this.triggers.isEmpty() || this.accessTriggers != 0;
+        final boolean methodTriggers = !this.methodTriggers.isEmpty();
+        if (classTriggers && methodTriggers) return false;
+
+        for (Class<?> clazz = this.getClass(); clazz != DowngradingTransformer.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.getName().equals("preTransform") || method.getName().equals("postTransform")) {
+                    if (!classTriggers && Arrays.equals(method.getParameterTypes(), new Class<?>[]{ClassNode.class, DowngradeResult.class})) return true;
+                } else if (method.getName().equals("transformMethod")) {
+                    if (!methodTriggers && Arrays.equals(method.getParameterTypes(), new Class<?>[]{MethodContext.class, DowngradeResult.class})) return true;
+                }
+            }
+        }
+        return false;
     }
 
     public int getSourceVersion() {
@@ -234,6 +186,17 @@ public abstract class DowngradingTransformer {
             this.extraDependencies = extraDependencies;
         }
 
+        String getNewName() {
+            return this.newName;
+        }
+
+        void collectDependencies(final RuntimeDepCollector depCollector) {
+            if (this.includeDependency) {
+                depCollector.accept(this.newName);
+                this.extraDependencies.forEach(depCollector);
+            }
+        }
+
         public static ClassReplacement ofAbsolute(String newName) {
             return new ClassReplacement(newName, true, Collections.emptyList());
         }
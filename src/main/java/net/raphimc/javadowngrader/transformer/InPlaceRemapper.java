@@ -0,0 +1,287 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.*;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies a {@link Remapper} which only maps class names to a {@link ClassNode} without copying it.<br>
+ * Names, descriptors and signatures which do not reference any of the mapped classes are left untouched, so they are never rebuilt.
+ */
+final class InPlaceRemapper {
+
+    private final Remapper remapper;
+    private final Set<String> mappedClasses;
+
+    /**
+     * @param remapper      The remapper to apply
+     * @param mappedClasses The internal names of all classes the remapper may map
+     */
+    InPlaceRemapper(final Remapper remapper, final Set<String> mappedClasses) {
+        this.remapper = remapper;
+        this.mappedClasses = mappedClasses;
+    }
+
+    void remap(final ClassNode classNode) {
+        classNode.name = this.type(classNode.name);
+        classNode.signature = this.signature(classNode.signature, false);
+        classNode.superName = this.type(classNode.superName);
+        this.types(classNode.interfaces);
+        if (classNode.outerClass != null) {
+            classNode.outerClass = this.type(classNode.outerClass);
+            classNode.outerMethodDesc = this.methodDesc(classNode.outerMethodDesc);
+        }
+        classNode.nestHostClass = this.type(classNode.nestHostClass);
+        this.types(classNode.nestMembers);
+        this.types(classNode.permittedSubclasses);
+        for (InnerClassNode innerClass : classNode.innerClasses) {
+            final String name = this.type(innerClass.name);
+            if (name != innerClass.name && innerClass.innerName != null) {
+                innerClass.innerName = this.remapper.mapInnerClassName(innerClass.name, innerClass.outerName, innerClass.innerName);
+            }
+            innerClass.name = name;
+            innerClass.outerName = this.type(innerClass.outerName);
+        }
+        this.annotations(classNode.visibleAnnotations);
+        this.annotations(classNode.invisibleAnnotations);
+        this.annotations(classNode.visibleTypeAnnotations);
+        this.annotations(classNode.invisibleTypeAnnotations);
+        if (classNode.recordComponents != null) {
+            for (RecordComponentNode recordComponent : classNode.recordComponents) {
+                recordComponent.descriptor = this.desc(recordComponent.descriptor);
+                recordComponent.signature = this.signature(recordComponent.signature, true);
+                this.annotations(recordComponent.visibleAnnotations);
+                this.annotations(recordComponent.invisibleAnnotations);
+                this.annotations(recordComponent.visibleTypeAnnotations);
+                this.annotations(recordComponent.invisibleTypeAnnotations);
+            }
+        }
+        for (FieldNode field : classNode.fields) {
+            field.desc = this.desc(field.desc);
+            field.signature = this.signature(field.signature, true);
+            this.annotations(field.visibleAnnotations);
+            this.annotations(field.invisibleAnnotations);
+            this.annotations(field.visibleTypeAnnotations);
+            this.annotations(field.invisibleTypeAnnotations);
+        }
+        for (MethodNode method : classNode.methods) {
+            this.remap(method);
+        }
+    }
+
+    private void remap(final MethodNode method) {
+        method.desc = this.methodDesc(method.desc);
+        method.signature = this.signature(method.signature, false);
+        this.types(method.exceptions);
+        this.annotations(method.visibleAnnotations);
+        this.annotations(method.invisibleAnnotations);
+        this.annotations(method.visibleTypeAnnotations);
+        this.annotations(method.invisibleTypeAnnotations);
+        this.parameterAnnotations(method.visibleParameterAnnotations);
+        this.parameterAnnotations(method.invisibleParameterAnnotations);
+        this.annotations(method.visibleLocalVariableAnnotations);
+        this.annotations(method.invisibleLocalVariableAnnotations);
+        if (method.annotationDefault != null) {
+            method.annotationDefault = this.annotationValue(method.annotationDefault);
+        }
+        if (method.localVariables != null) {
+            for (LocalVariableNode localVariable : method.localVariables) {
+                localVariable.desc = this.desc(localVariable.desc);
+                localVariable.signature = this.signature(localVariable.signature, true);
+            }
+        }
+        for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+            tryCatchBlock.type = this.type(tryCatchBlock.type);
+            this.annotations(tryCatchBlock.visibleTypeAnnotations);
+            this.annotations(tryCatchBlock.invisibleTypeAnnotations);
+        }
+
+        for (AbstractInsnNode insn : method.instructions) {
+            this.annotations(insn.visibleTypeAnnotations);
+            this.annotations(insn.invisibleTypeAnnotations);
+            switch (insn.getType()) {
+                case AbstractInsnNode.TYPE_INSN: {
+                    final TypeInsnNode typeInsn = (TypeInsnNode) insn;
+                    typeInsn.desc = this.type(typeInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.FIELD_INSN: {
+                    final FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                    fieldInsn.owner = this.type(fieldInsn.owner);
+                    fieldInsn.desc = this.desc(fieldInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.METHOD_INSN: {
+                    final MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                    methodInsn.owner = this.type(methodInsn.owner);
+                    methodInsn.desc = this.methodDesc(methodInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                    final InvokeDynamicInsnNode invokeDynamicInsn = (InvokeDynamicInsnNode) insn;
+                    invokeDynamicInsn.desc = this.methodDesc(invokeDynamicInsn.desc);
+                    invokeDynamicInsn.bsm = (Handle) this.value(invokeDynamicInsn.bsm);
+                    for (int i = 0; i < invokeDynamicInsn.bsmArgs.length; i++) {
+                        invokeDynamicInsn.bsmArgs[i] = this.value(invokeDynamicInsn.bsmArgs[i]);
+                    }
+                    break;
+                }
+                case AbstractInsnNode.LDC_INSN: {
+                    final LdcInsnNode ldcInsn = (LdcInsnNode) insn;
+                    ldcInsn.cst = this.value(ldcInsn.cst);
+                    break;
+                }
+                case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+                    final MultiANewArrayInsnNode multiANewArrayInsn = (MultiANewArrayInsnNode) insn;
+                    multiANewArrayInsn.desc = this.desc(multiANewArrayInsn.desc);
+                    break;
+                }
+                case AbstractInsnNode.FRAME: {
+                    final FrameNode frame = (FrameNode) insn;
+                    this.frameTypes(frame.local);
+                    this.frameTypes(frame.stack);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void types(final List<String> types) {
+        if (types == null) return;
+        for (int i = 0; i < types.size(); i++) {
+            types.set(i, this.type(types.get(i)));
+        }
+    }
+
+    private void frameTypes(final List<Object> types) {
+        if (types == null) return;
+        for (int i = 0; i < types.size(); i++) {
+            final Object type = types.get(i);
+            if (type instanceof String) {
+                types.set(i, this.type((String) type));
+            }
+        }
+    }
+
+    private void annotations(final List<? extends AnnotationNode> annotations) {
+        if (annotations == null) return;
+        for (AnnotationNode annotation : annotations) {
+            this.annotation(annotation);
+        }
+    }
+
+    private void parameterAnnotations(final List<AnnotationNode>[] parameterAnnotations) {
+        if (parameterAnnotations == null) return;
+        for (List<AnnotationNode> annotations : parameterAnnotations) {
+            this.annotations(annotations);
+        }
+    }
+
+    private void annotation(final AnnotationNode annotation) {
+        annotation.desc = this.desc(annotation.desc);
+        if (annotation.values == null) return;
+        for (int i = 1; i < annotation.values.size(); i += 2) {
+            annotation.values.set(i, this.annotationValue(annotation.values.get(i)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object annotationValue(final Object value) {
+        if (value instanceof AnnotationNode) {
+            this.annotation((AnnotationNode) value);
+        } else if (value instanceof String[]) {
+            final String[] enumValue = (String[]) value;
+            enumValue[0] = this.desc(enumValue[0]);
+        } else if (value instanceof List) {
+            final List<Object> values = (List<Object>) value;
+            for (int i = 0; i < values.size(); i++) {
+                values.set(i, this.annotationValue(values.get(i)));
+            }
+        } else if (value instanceof Type) {
+            return this.value(value);
+        }
+        return value;
+    }
+
+    private Object value(final Object value) {
+        if (value instanceof Type) {
+            final Type type = (Type) value;
+            final String descriptor = type.getDescriptor();
+            final String mappedDescriptor = type.getSort() == Type.METHOD ? this.methodDesc(descriptor) : this.desc(descriptor);
+            return mappedDescriptor == descriptor ? type : this.remapper.mapValue(type);
+        }
+        if (value instanceof Handle) {
+            final Handle handle = (Handle) value;
+            if (!this.isMapped(handle.getOwner()) && !this.references(handle.getDesc())) return handle;
+            return this.remapper.mapValue(handle);
+        }
+        if (value instanceof String || value instanceof Number || value == null) {
+            return value;
+        }
+        // Constant dynamics can nest arbitrary constants, let the remapper handle them
+        return this.remapper.mapValue(value);
+    }
+
+    private String type(final String internalName) {
+        if (internalName == null) return null;
+        if (internalName.charAt(0) == '[') return this.desc(internalName);
+        if (!this.isMapped(internalName)) return internalName;
+        return this.remapper.mapType(internalName);
+    }
+
+    private String desc(final String descriptor) {
+        if (descriptor == null || !this.references(descriptor)) return descriptor;
+        return this.remapper.mapDesc(descriptor);
+    }
+
+    private String methodDesc(final String descriptor) {
+        if (descriptor == null || !this.references(descriptor)) return descriptor;
+        return this.remapper.mapMethodDesc(descriptor);
+    }
+
+    private String signature(final String signature, final boolean typeSignature) {
+        if (signature == null || !this.references(signature)) return signature;
+        return this.remapper.mapSignature(signature, typeSignature);
+    }
+
+    private boolean isMapped(final String internalName) {
+        return this.mappedClasses.contains(internalName);
+    }
+
+    /**
+     * @return If the descriptor or signature contains a reference to a mapped class
+     */
+    private boolean references(final String descriptor) {
+        for (String mappedClass : this.mappedClasses) {
+            int index = -1;
+            while ((index = descriptor.indexOf(mappedClass, index + 1)) != -1) {
+                final int end = index + mappedClass.length();
+                if (index == 0 || descriptor.charAt(index - 1) != 'L' || end == descriptor.length()) continue;
+                if (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<') return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -26,4 +26,19 @@ public interface MethodCallReplacer {
 
     InsnList getReplacement(final ClassNode classNode, final MethodNode method, String originalName, final String originalDesc, final RuntimeDepCollector depCollector, final DowngradeResult result);
 
+    /**
+     * Called instead of {@link #getReplacement(ClassNode, MethodNode, String, String, RuntimeDepCollector, DowngradeResult)} when the replacement is done for a whole method.<br>
+     * Replacers which allocate locals should override this to share the allocations of the method.
+     *
+     * @param context      The context of the method containing the call
+     * @param originalName The name of the called method
+     * @param originalDesc The descriptor of the called method
+     * @param depCollector The {@link RuntimeDepCollector} to use to collect runtime dependencies
+     * @param result       The {@link DowngradeResult} of the replacement
+     * @return The instructions to replace the call with
+     */
+    default InsnList getReplacement(final MethodContext context, final String originalName, final String originalDesc, final RuntimeDepCollector depCollector, final DowngradeResult result) {
+        return this.getReplacement(context.getClassNode(), context.getMethodNode(), originalName, originalDesc, depCollector, result);
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import net.raphimc.javadowngrader.util.ASMUtil;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+/**
+ * State of a single method which is shared by all transformations of that method.<br>
+ * Local variables are only scanned once per method, so allocating temporaries does not depend on the size of the method.
+ */
+public class MethodContext {
+
+    private final ClassNode classNode;
+    private final MethodNode methodNode;
+    private int freeVarIndex = -1;
+
+    public MethodContext(final ClassNode classNode, final MethodNode methodNode) {
+        this.classNode = classNode;
+        this.methodNode = methodNode;
+    }
+
+    public ClassNode getClassNode() {
+        return this.classNode;
+    }
+
+    public MethodNode getMethodNode() {
+        return this.methodNode;
+    }
+
+    /**
+     * Allocates a local variable which is not used by the method or any other temporary allocated before.
+     *
+     * @param type The type of the local variable
+     * @return The index of the local variable
+     */
+    public int allocateLocal(final Type type) {
+        return this.allocateLocals(type.getSize());
+    }
+
+    /**
+     * Allocates consecutive local variable slots which are not used by the method or any other temporary allocated before.
+     *
+     * @param size The amount of slots to allocate
+     * @return The index of the first slot
+     */
+    public int allocateLocals(final int size) {
+        if (this.freeVarIndex == -1) {
+            this.freeVarIndex = ASMUtil.getFreeVarIndex(this.methodNode);
+        }
+        final int index = this.freeVarIndex;
+        this.freeVarIndex += size;
+        return index;
+    }
+
+    /**
+     * Reserves all local variables used by the given instructions.<br>
+     * This keeps allocations consistent with replacements which pick their local variables themselves.
+     *
+     * @param instructions The instructions which are about to be inserted into the method
+     */
+    void reserveLocals(final InsnList instructions) {
+        if (this.freeVarIndex == -1) return;
+
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof VarInsnNode) {
+                final int opcode = insn.getOpcode();
+                final boolean wide = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+                this.freeVarIndex = Math.max(this.freeVarIndex, ((VarInsnNode) insn).var + (wide ? 2 : 1));
+            } else if (insn instanceof IincInsnNode) {
+                this.freeVarIndex = Math.max(this.freeVarIndex, ((IincInsnNode) insn).var + 1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup table for values keyed on a method owner, name and optionally descriptor.<br>
+ * Lookups never build any intermediate key strings and unknown owners are rejected with a single hash lookup.
+ *
+ * @param <T> The value type
+ */
+final class MethodIndex<T> {
+
+    private final Map<String, Map<String, Entry<T>>> owners = new HashMap<>();
+
+    /**
+     * @param owner      The internal name of the method owner
+     * @param name       The method name
+     * @param descriptor The method descriptor or null to match all descriptors
+     * @param value      The value to store
+     */
+    void put(final String owner, final String name, final String descriptor, final T value) {
+        final Entry<T> entry = this.owners.computeIfAbsent(owner, k -> new HashMap<>()).computeIfAbsent(name, k -> new Entry<>());
+        if (descriptor == null) {
+            entry.any = value;
+        } else {
+            if (entry.descriptors.isEmpty()) {
+                entry.descriptors = new HashMap<>();
+            }
+            entry.descriptors.put(descriptor, value);
+        }
+    }
+
+    /**
+     * @param owner The internal name of the method owner
+     * @param name  The method name
+     * @return The entry of the method or null if neither the owner nor the name is known
+     */
+    Entry<T> get(final String owner, final String name) {
+        final Map<String, Entry<T>> names = this.owners.get(owner);
+        if (names == null) return null;
+        return names.get(name);
+    }
+
+    boolean isEmpty() {
+        return this.owners.isEmpty();
+    }
+
+    void forEach(final Visitor<T> visitor) {
+        for (Map.Entry<String, Map<String, Entry<T>>> owner : this.owners.entrySet()) {
+            for (Map.Entry<String, Entry<T>> name : owner.getValue().entrySet()) {
+                final Entry<T> entry = name.getValue();
+                if (entry.any != null) {
+                    visitor.visit(owner.getKey(), name.getKey(), null, entry.any);
+                }
+                for (Map.Entry<String, T> descriptor : entry.descriptors.entrySet()) {
+                    visitor.visit(owner.getKey(), name.getKey(), descriptor.getKey(), descriptor.getValue());
+                }
+            }
+        }
+    }
+
+    static final class Entry<T> {
+        private T any;
+        private Map<String, T> descriptors = Collections.emptyMap();
+
+        /**
+         * @return The value registered for all descriptors or null
+         */
+        T getAny() {
+            return this.any;
+        }
+
+        /**
+         * @param descriptor The method descriptor
+         * @return The value registered for exactly this descriptor or null
+         */
+        T get(final String descriptor) {
+            return this.descriptors.get(descriptor);
+        }
+    }
+
+    @FunctionalInterface
+    interface Visitor<T> {
+        void visit(final String owner, final String name, final String descriptor, final T value);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LabelNode;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A stack map frame emitted by a {@link MethodCallReplacer} which is described relative to the state before the replacement.<br>
+ * Branch targets inside of a replacement have to be followed by one of these instead of requesting stack map frame recalculation.
+ * The frame is resolved against the existing frames of the method after all replacers ran, so no class hierarchy lookups are required.<br>
+ * Types use the same format as {@link org.objectweb.asm.MethodVisitor#visitFrame}.
+ */
+public class RelativeFrameNode extends FrameNode {
+
+    private final int poppedStack;
+    private final Object[] pushedStack;
+    private final Map<Integer, Object> tempLocals = new TreeMap<>();
+    LabelNode base;
+
+    /**
+     * @param poppedStack The amount of values (not slots) removed from the stack before the replacement
+     * @param pushedStack The values pushed on top of the remaining stack
+     */
+    public RelativeFrameNode(final int poppedStack, final Object... pushedStack) {
+        super(Opcodes.F_NEW, 0, null, 0, null);
+        this.poppedStack = poppedStack;
+        this.pushedStack = pushedStack;
+    }
+
+    /**
+     * Adds a local variable which is used by the replacement in addition to the locals before the replacement.
+     *
+     * @param index The index of the local variable
+     * @param type  The type of the local variable
+     * @return This frame
+     */
+    public RelativeFrameNode withLocal(final int index, final Object type) {
+        this.tempLocals.put(index, type);
+        return this;
+    }
+
+    int getPoppedStack() {
+        return this.poppedStack;
+    }
+
+    Object[] getPushedStack() {
+        return this.pushedStack;
+    }
+
+    Map<Integer, Object> getTempLocals() {
+        return this.tempLocals;
+    }
+
+    @Override
+    public AbstractInsnNode clone(final Map<LabelNode, LabelNode> clonedLabels) {
+        final RelativeFrameNode clone = new RelativeFrameNode(this.poppedStack, Arrays.copyOf(this.pushedStack, this.pushedStack.length));
+        clone.tempLocals.putAll(this.tempLocals);
+        clone.base = this.base == null ? null : clonedLabels.getOrDefault(this.base, this.base);
+        return clone.cloneAnnotations(this);
+    }
+
+    /**
+     * Marks the start of the given replacement as the state all relative frames in it are described against.
+     *
+     * @param replacement The instructions emitted by a {@link MethodCallReplacer}
+     * @return If the replacement contains any relative frames
+     */
+    static boolean bind(final InsnList replacement) {
+        boolean found = false;
+        LabelNode base = null;
+        for (AbstractInsnNode insn = replacement.getFirst(); insn != null; insn = insn.getNext()) {
+            if (!(insn instanceof RelativeFrameNode)) continue;
+
+            found = true;
+            if (((RelativeFrameNode) insn).base != null) continue;
+            if (base == null) {
+                base = new LabelNode();
+                replacement.insert(base);
+            }
+            ((RelativeFrameNode) insn).base = base;
+        }
+        return found;
+    }
+
+}
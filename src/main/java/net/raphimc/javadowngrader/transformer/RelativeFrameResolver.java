@@ -0,0 +1,219 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Resolves the {@link RelativeFrameNode}s of a method by simulating it from its existing stack map frames.<br>
+ * All frames of a resolved method are expanded to {@link Opcodes#F_NEW}.
+ */
+final class RelativeFrameResolver {
+
+    /**
+     * @param owner      The internal name of the class containing the method
+     * @param methodNode The method to resolve the relative frames of
+     * @throws IllegalStateException If the state before a replacement could not be determined
+     */
+    static void resolve(final String owner, final MethodNode methodNode) {
+        final InsnList instructions = methodNode.instructions;
+        expandFrames(owner, methodNode);
+
+        final Set<LabelNode> bases = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Map<Label, LabelNode> labels = new IdentityHashMap<>();
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof RelativeFrameNode) {
+                bases.add(((RelativeFrameNode) insn).base);
+            } else if (insn.getOpcode() == Opcodes.NEW && !(insn.getPrevious() instanceof LabelNode)) {
+                // Uninitialized types are identified by the label of their NEW instruction
+                instructions.insertBefore(insn, new LabelNode());
+            }
+        }
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof LabelNode) {
+                labels.put(((LabelNode) insn).getLabel(), (LabelNode) insn);
+            }
+        }
+
+        final AnalyzerAdapter analyzer = new AnalyzerAdapter(owner, methodNode.access, methodNode.name, methodNode.desc, null);
+        final Map<LabelNode, List<Object>> baseLocals = new IdentityHashMap<>();
+        final Map<LabelNode, List<Object>> baseStacks = new IdentityHashMap<>();
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof RelativeFrameNode) {
+                final RelativeFrameNode frame = (RelativeFrameNode) insn;
+                if (!baseLocals.containsKey(frame.base)) {
+                    throw new IllegalStateException("Replacement in " + methodNode.name + methodNode.desc + " is not reachable from the existing frames");
+                }
+                frame.local = toFrameTypes(withTempLocals(baseLocals.get(frame.base), frame.getTempLocals()), labels);
+                frame.stack = toFrameTypes(popValues(baseStacks.get(frame.base), frame.getPoppedStack()), labels);
+                frame.stack.addAll(Arrays.asList(frame.getPushedStack()));
+            }
+            insn.accept(analyzer);
+            if (insn instanceof LabelNode && bases.contains(insn) && analyzer.locals != null) {
+                baseLocals.put((LabelNode) insn, new ArrayList<>(analyzer.locals));
+                baseStacks.put((LabelNode) insn, new ArrayList<>(analyzer.stack));
+            }
+        }
+
+        removeDuplicateFrames(instructions);
+    }
+
+    private static void expandFrames(final String owner, final MethodNode methodNode) {
+        final List<Object> locals = new ArrayList<>();
+        if ((methodNode.access & Opcodes.ACC_STATIC) == 0) {
+            locals.add(methodNode.name.equals("<init>") ? Opcodes.UNINITIALIZED_THIS : owner);
+        }
+        for (Type argumentType : Type.getArgumentTypes(methodNode.desc)) {
+            locals.add(toFrameType(argumentType));
+        }
+
+        for (AbstractInsnNode insn = methodNode.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (!(insn instanceof FrameNode) || insn instanceof RelativeFrameNode) continue;
+
+            final FrameNode frame = (FrameNode) insn;
+            switch (frame.type) {
+                case Opcodes.F_NEW:
+                case Opcodes.F_FULL:
+                    locals.clear();
+                    locals.addAll(frame.local);
+                    break;
+                case Opcodes.F_APPEND:
+                    locals.addAll(frame.local);
+                    frame.stack = new ArrayList<>();
+                    break;
+                case Opcodes.F_CHOP:
+                    locals.subList(locals.size() - frame.local.size(), locals.size()).clear();
+                    frame.stack = new ArrayList<>();
+                    break;
+                case Opcodes.F_SAME:
+                    frame.stack = new ArrayList<>();
+                    break;
+                case Opcodes.F_SAME1:
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown frame type " + frame.type);
+            }
+            frame.type = Opcodes.F_NEW;
+            frame.local = new ArrayList<>(locals);
+        }
+    }
+
+    private static List<Object> withTempLocals(final List<Object> slots, final Map<Integer, Object> tempLocals) {
+        final List<Object> locals = new ArrayList<>(slots);
+        for (Map.Entry<Integer, Object> entry : tempLocals.entrySet()) {
+            final int index = entry.getKey();
+            final int size = entry.getValue() == Opcodes.LONG || entry.getValue() == Opcodes.DOUBLE ? 2 : 1;
+            while (locals.size() < index + size) {
+                locals.add(Opcodes.TOP);
+            }
+            locals.set(index, entry.getValue());
+            if (size == 2) {
+                locals.set(index + 1, Opcodes.TOP);
+            }
+        }
+        return locals;
+    }
+
+    private static List<Object> popValues(final List<Object> slots, final int count) {
+        final List<Object> stack = new ArrayList<>(slots);
+        for (int i = 0; i < count; i++) {
+            if (stack.isEmpty()) {
+                throw new IllegalStateException("Relative frame pops more values than the stack contains");
+            }
+            final Object value = stack.remove(stack.size() - 1);
+            if (value == Opcodes.TOP && !stack.isEmpty() && isWide(stack.get(stack.size() - 1))) {
+                stack.remove(stack.size() - 1);
+            }
+        }
+        return stack;
+    }
+
+    /**
+     * Converts the slot based types of the {@link AnalyzerAdapter} to the value based types of a frame.
+     */
+    private static List<Object> toFrameTypes(final List<Object> slots, final Map<Label, LabelNode> labels) {
+        final List<Object> types = new ArrayList<>(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            final Object type = slots.get(i);
+            if (type instanceof Label) {
+                final LabelNode label = labels.get(type);
+                if (label == null) {
+                    throw new IllegalStateException("Unknown uninitialized type");
+                }
+                types.add(label);
+            } else {
+                types.add(type);
+            }
+            if (isWide(type)) i++;
+        }
+        while (!types.isEmpty() && types.get(types.size() - 1) == Opcodes.TOP) {
+            types.remove(types.size() - 1);
+        }
+        return types;
+    }
+
+    private static void removeDuplicateFrames(final InsnList instructions) {
+        // A relative frame directly before or after an existing frame describes the same offset
+        FrameNode previous = null;
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; ) {
+            final AbstractInsnNode next = insn.getNext();
+            if (insn instanceof FrameNode) {
+                if (previous instanceof RelativeFrameNode) {
+                    instructions.remove(previous);
+                } else if (previous != null && insn instanceof RelativeFrameNode) {
+                    instructions.remove(insn);
+                    insn = previous;
+                }
+                previous = (FrameNode) insn;
+            } else if (insn.getOpcode() >= 0) {
+                previous = null;
+            }
+            insn = next;
+        }
+    }
+
+    private static boolean isWide(final Object type) {
+        return type == Opcodes.LONG || type == Opcodes.DOUBLE;
+    }
+
+    private static Object toFrameType(final Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.CHAR:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.INT:
+                return Opcodes.INTEGER;
+            case Type.FLOAT:
+                return Opcodes.FLOAT;
+            case Type.LONG:
+                return Opcodes.LONG;
+            case Type.DOUBLE:
+                return Opcodes.DOUBLE;
+            default:
+                return type.getSort() == Type.ARRAY ? type.getDescriptor() : type.getInternalName();
+        }
+    }
+
+}
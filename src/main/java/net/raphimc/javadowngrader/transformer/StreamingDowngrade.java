@@ -0,0 +1,159 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer;
+
+import net.raphimc.javadowngrader.RuntimeDepCollector;
+import net.raphimc.javadowngrader.util.ASMUtil;
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.BitSet;
+
+/**
+ * A class which is downgraded by a {@link DowngradePlan} without reading it into a {@link ClassNode}.<br>
+ * Only the methods changed by the plan are read into {@link MethodNode}s. If this is accepted by a {@link ClassWriter} created with
+ * {@link #getReader()}, all other methods are copied from the input class file without being parsed again.
+ */
+public class StreamingDowngrade {
+
+    private final DowngradePlan plan;
+    private final ClassReader reader;
+    private final DowngradeResult result = new DowngradeResult();
+    private final ClassNode classNode = new ClassNode();
+    private final BitSet transformedMethods = new BitSet();
+    private final int methodCount;
+
+    StreamingDowngrade(final DowngradePlan plan, final ClassReader reader, final RuntimeDepCollector depCollector) {
+        this.plan = plan;
+        this.reader = reader;
+
+        // Read the class header and method signatures and find the methods which have to be transformed
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                classNode.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                final int index = classNode.methods.size();
+                classNode.methods.add(new MethodNode(access, name, descriptor, signature, exceptions));
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        if (plan.isTransformedCall(owner, name, descriptor)) {
+                            transformedMethods.set(index);
+                        }
+                    }
+
+                    @Override
+                    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                        if (plan.isTransformedInvokeDynamic(bootstrapMethodHandle, bootstrapMethodArguments)) {
+                            transformedMethods.set(index);
+                        }
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        this.methodCount = this.classNode.methods.size();
+
+        if (!this.transformedMethods.isEmpty()) {
+            // Only read the code of the methods which have to be transformed
+            reader.accept(new ClassVisitor(Opcodes.ASM9) {
+                private int index;
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    final int index = this.index++;
+                    if (!transformedMethods.get(index)) return null;
+
+                    final MethodNode methodNode = new MethodNode(access, name, descriptor, signature, exceptions);
+                    classNode.methods.set(index, methodNode);
+                    return methodNode;
+                }
+            }, 0);
+        }
+
+        plan.transformMethods(this.classNode, this.transformedMethods, depCollector, this.result);
+    }
+
+    /**
+     * Writes the downgraded class to the given class visitor.<br>
+     * Methods which were not transformed are passed through from the {@link ClassReader}.
+     *
+     * @param classVisitor The class visitor to write the class to
+     */
+    public void accept(final ClassVisitor classVisitor) {
+        this.reader.accept(new ClassVisitor(Opcodes.ASM9, classVisitor) {
+            private int index;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                super.visit(plan.getTargetVersion(), access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                final int index = this.index++;
+                if (!transformedMethods.get(index)) {
+                    return super.visitMethod(access, name, descriptor, signature, exceptions);
+                }
+
+                classNode.methods.get(index).accept(this.cv);
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                // Bridges, helper methods and inserted methods
+                for (int i = methodCount; i < classNode.methods.size(); i++) {
+                    classNode.methods.get(i).accept(this.cv);
+                }
+                super.visitEnd();
+            }
+        }, 0);
+    }
+
+    /**
+     * Recalculates the stack map frames of the transformed methods which require it.<br>
+     * Must be called before {@link #accept}.
+     *
+     * @param writer A new {@link ClassWriter} with {@link ClassWriter#COMPUTE_FRAMES} which is able to resolve the class hierarchy
+     * @see DowngradeResult#getStackMapFrameMethods()
+     */
+    public void computeStackMapFrames(final ClassWriter writer) {
+        if (this.result.getStackMapFrameMethods().isEmpty()) return;
+        ASMUtil.computeStackMapFrames(this.classNode, this.result.getStackMapFrameMethods(), writer);
+    }
+
+    /**
+     * @return The reader of the input class file
+     */
+    public ClassReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * @return The {@link DowngradeResult} of the transformed methods
+     */
+    public DowngradeResult getResult() {
+        return this.result;
+    }
+
+}
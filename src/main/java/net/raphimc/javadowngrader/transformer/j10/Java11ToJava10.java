@@ -53,6 +53,14 @@ public class Java11ToJava10 extends DowngradingTransformer {
         this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/util/zip/Inflater", "inflate", "(Ljava/nio/ByteBuffer;)I", new InflaterInflateMCR());
 
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/io/OutputStream", "nullOutputStream", "()Ljava/io/OutputStream;", new OutputStreamNullOutputStreamMCR());
+
+        final String[] inputStreamClasses = new String[]{"java/io/InputStream", "java/io/FileInputStream", "java/io/ByteArrayInputStream"};
+        for (String inputStreamClass : inputStreamClasses) {
+            this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, inputStreamClass, "readNBytes", "(I)[B", new InputStreamReadNBytesMCR());
+        }
+
+        this.addTrigger("NestHost");
+        this.addTrigger("NestMembers");
     }
 
     @Override
@@ -20,7 +20,7 @@ package net.raphimc.javadowngrader.transformer.j10.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.util.ASMUtil;
+import net.raphimc.javadowngrader.transformer.MethodContext;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -28,7 +28,12 @@ public class FilesWriteStringMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        int freeVarIndex = ASMUtil.getFreeVarIndex(methodNode);
+        return this.getReplacement(new MethodContext(classNode, methodNode), originalName, originalDesc, depCollector, result);
+    }
+
+    @Override
+    public InsnList getReplacement(MethodContext context, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        final int freeVarIndex = context.allocateLocals(1);
         final InsnList replacement = new InsnList();
 
         boolean hasStoredCharset;
@@ -27,34 +27,12 @@ public class InflaterInflateMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode method, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/zip/Inflaters");
+
         final InsnList replacement = new InsnList();
 
         // Inflater ByteBuffer
-        replacement.add(new InsnNode(Opcodes.DUP));
-        // Inflater ByteBuffer ByteBuffer
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/nio/ByteBuffer", "remaining", "()I"));
-        // Inflater ByteBuffer int
-        replacement.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_BYTE));
-        // Inflater ByteBuffer byte[]
-        replacement.add(new InsnNode(Opcodes.DUP2_X1));
-        // ByteBuffer byte[] Inflater ByteBuffer byte[]
-        replacement.add(new InsnNode(Opcodes.POP2));
-        // ByteBuffer byte[] Inflater
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // ByteBuffer Inflater byte[]
-        replacement.add(new InsnNode(Opcodes.DUP_X1));
-        // ByteBuffer byte[] Inflater byte[]
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/zip/Inflater", "inflate", "([B)I"));
-        // ByteBuffer byte[] int
-        replacement.add(new InsnNode(Opcodes.DUP_X2));
-        // int ByteBuffer byte[] int
-        replacement.add(new InsnNode(Opcodes.ICONST_0));
-        // int ByteBuffer byte[] int int(0)
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // int ByteBuffer byte[] int(0) int
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/nio/ByteBuffer", "put", "([BII)Ljava/nio/ByteBuffer;"));
-        // int ByteBuffer
-        replacement.add(new InsnNode(Opcodes.POP));
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/zip/Inflaters", "inflate", "(Ljava/util/zip/Inflater;Ljava/nio/ByteBuffer;)I"));
         // int
 
         return replacement;
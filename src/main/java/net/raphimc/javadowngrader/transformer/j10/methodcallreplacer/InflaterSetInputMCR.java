@@ -27,22 +27,12 @@ public class InflaterSetInputMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode method, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/zip/Inflaters");
+
         final InsnList replacement = new InsnList();
 
         // Inflater ByteBuffer
-        replacement.add(new InsnNode(Opcodes.DUP));
-        // Inflater ByteBuffer ByteBuffer
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/nio/ByteBuffer", "remaining", "()I"));
-        // Inflater ByteBuffer int
-        replacement.add(new IntInsnNode(Opcodes.NEWARRAY, Opcodes.T_BYTE));
-        // Inflater ByteBuffer byte[]
-        replacement.add(new InsnNode(Opcodes.DUP_X1));
-        // Inflater byte[] ByteBuffer byte[]
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/nio/ByteBuffer", "get", "([B)Ljava/nio/ByteBuffer;"));
-        // Inflater byte[] ByteBuffer
-        replacement.add(new InsnNode(Opcodes.POP));
-        // Inflater byte[]
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/zip/Inflater", "setInput", "([B)V"));
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/zip/Inflaters", "setInput", "(Ljava/util/zip/Inflater;Ljava/nio/ByteBuffer;)V"));
 
         return replacement;
     }
@@ -20,7 +20,7 @@ package net.raphimc.javadowngrader.transformer.j11.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.util.ASMUtil;
+import net.raphimc.javadowngrader.transformer.MethodContext;
 import net.raphimc.javadowngrader.util.Constants;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
@@ -38,14 +38,20 @@ public class CompletableFutureExceptionallyAsyncMCR implements MethodCallReplace
     private static final String handleAsyncBiFunctionDescriptor = "(Ljava/util/function/Function;Ljava/lang/Object;Ljava/lang/Throwable;)Ljava/lang/Object;";
 
     @Override
-    public InsnList getReplacement(ClassNode classNode, MethodNode method, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+    public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        return this.getReplacement(new MethodContext(classNode, methodNode), originalName, originalDesc, depCollector, result);
+    }
+
+    @Override
+    public InsnList getReplacement(MethodContext context, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        final ClassNode classNode = context.getClassNode();
         boolean isInterface = Modifier.isInterface(classNode.access);
         MethodNode handleBiFunctionBody = this.makeHandleBiFunctionBody(classNode, isInterface);
         MethodNode handleAsyncBiFunctionBody = this.makeHandleAsyncBiFunctionBody();
         classNode.methods.add(handleBiFunctionBody);
         classNode.methods.add(handleAsyncBiFunctionBody);
 
-        int freeVarIndex = ASMUtil.getFreeVarIndex(method);
+        final int freeVarIndex = context.allocateLocals(3);
         final InsnList replacement = new InsnList();
 
         replacement.add(new VarInsnNode(Opcodes.ASTORE, freeVarIndex + 2));
@@ -81,7 +87,6 @@ public class CompletableFutureExceptionallyAsyncMCR implements MethodCallReplace
         replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/function/Function", "identity", "()Ljava/util/function/Function;", true));
         replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/concurrent/CompletableFuture", "thenCompose", "(Ljava/util/function/Function;)Ljava/util/concurrent/CompletableFuture;"));
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
@@ -119,6 +124,7 @@ public class CompletableFutureExceptionallyAsyncMCR implements MethodCallReplace
         lambda.instructions.add(new InsnNode(Opcodes.ARETURN));
 
         lambda.instructions.add(isNullJump);
+        lambda.instructions.add(new FrameNode(Opcodes.F_SAME, 0, null, 0, null));
         lambda.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
         lambda.instructions.add(new InsnNode(Opcodes.ARETURN));
         return lambda;
@@ -56,6 +56,7 @@ public class FileSystemsNewFileSystemCreator {
         newFileSystem.visitInsn(Opcodes.ATHROW);
 
         newFileSystem.visitLabel(if1Label);
+        newFileSystem.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
 
         // for (FileSystemProvider provider: FileSystemProvider.installedProviders()) {
         newFileSystem.visitMethodInsn(
@@ -75,6 +76,7 @@ public class FileSystemsNewFileSystemCreator {
         newFileSystem.visitVarInsn(Opcodes.ASTORE, 3);
         final Label for1StartLabel = new Label();
         newFileSystem.visitLabel(for1StartLabel);
+        newFileSystem.visitFrame(Opcodes.F_APPEND, 1, new Object[]{"java/util/Iterator"}, 0, null);
         newFileSystem.visitVarInsn(Opcodes.ALOAD, 3);
         newFileSystem.visitMethodInsn(
                 Opcodes.INVOKEINTERFACE,
@@ -119,6 +121,7 @@ public class FileSystemsNewFileSystemCreator {
         // } catch (UnsupportedOperationException uoe) {
         newFileSystem.visitLabel(try1End);
         newFileSystem.visitLabel(try1Handler);
+        newFileSystem.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/UnsupportedOperationException"});
 
         // }
         newFileSystem.visitInsn(Opcodes.POP);
@@ -126,6 +129,7 @@ public class FileSystemsNewFileSystemCreator {
         // }
         newFileSystem.visitJumpInsn(Opcodes.GOTO, for1StartLabel);
         newFileSystem.visitLabel(for1EndLabel);
+        newFileSystem.visitFrame(Opcodes.F_CHOP, 1, null, 0, null);
 
         // if (loader != null) {
         newFileSystem.visitVarInsn(Opcodes.ALOAD, 2);
@@ -156,6 +160,7 @@ public class FileSystemsNewFileSystemCreator {
         newFileSystem.visitVarInsn(Opcodes.ASTORE, 4);
         final Label for2StartLabel = new Label();
         newFileSystem.visitLabel(for2StartLabel);
+        newFileSystem.visitFrame(Opcodes.F_APPEND, 2, new Object[]{"java/util/ServiceLoader", "java/util/Iterator"}, 0, null);
         newFileSystem.visitVarInsn(Opcodes.ALOAD, 4);
         newFileSystem.visitMethodInsn(
                 Opcodes.INVOKEINTERFACE,
@@ -200,6 +205,7 @@ public class FileSystemsNewFileSystemCreator {
         // } catch (UnsupportedOperationException uoe) {
         newFileSystem.visitLabel(try2End);
         newFileSystem.visitLabel(try2Handler);
+        newFileSystem.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/UnsupportedOperationException"});
 
         // }
         newFileSystem.visitInsn(Opcodes.POP);
@@ -210,6 +216,7 @@ public class FileSystemsNewFileSystemCreator {
 
         // }
         newFileSystem.visitLabel(if2Label);
+        newFileSystem.visitFrame(Opcodes.F_CHOP, 2, null, 0, null);
 
         // throw new ProviderNotFoundException("Provider not found");
         newFileSystem.visitTypeInsn(Opcodes.NEW, "java/nio/file/ProviderNotFoundException");
@@ -37,9 +37,7 @@ public class FileSystemsNewFileSystemMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode method, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        if (FileSystemsNewFileSystemCreator.ensureHasMethod(classNode)) {
-            result.setRequiresStackMapFrames();
-        }
+        FileSystemsNewFileSystemCreator.ensureHasMethod(classNode);
 
         final InsnList replacement = new InsnList();
         if (arity < 2) {
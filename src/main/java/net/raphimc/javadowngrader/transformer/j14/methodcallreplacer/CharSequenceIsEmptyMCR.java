@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j14.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -44,11 +45,12 @@ public class CharSequenceIsEmptyMCR implements MethodCallReplacer {
 
         //
         replacement.add(ifNeq);
+        replacement.add(new RelativeFrameNode(1));
         replacement.add(new InsnNode(Opcodes.ICONST_0));
         // int
         replacement.add(end);
+        replacement.add(new RelativeFrameNode(1, Opcodes.INTEGER));
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
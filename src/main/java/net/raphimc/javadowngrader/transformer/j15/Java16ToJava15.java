@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j15;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.DowngradingTransformer;
 import net.raphimc.javadowngrader.transformer.j15.methodcallreplacer.StreamToListMCR;
+import net.raphimc.javadowngrader.util.ASMUtil;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
@@ -31,12 +32,16 @@ public class Java16ToJava15 extends DowngradingTransformer {
         this.addMethodCallReplacer(Opcodes.INVOKEINTERFACE, "java/util/stream/Stream", "toList", "()Ljava/util/List;", new StreamToListMCR());
 
         this.addClassReplacement("java/lang/Record", ClassReplacement.ofRenameOnly("java/lang/Object"));
+
+        this.addTrigger("java/lang/Record");
+        this.addTrigger("java/lang/runtime/ObjectMethods");
     }
 
     @Override
     protected void preTransform(ClassNode classNode, DowngradeResult result) {
         if (RecordReplacer.replace(classNode)) {
-            result.setRequiresStackMapFrames();
+            // Only the generated equals method branches, the renamed record class is already covered by the existing frames
+            result.setRequiresStackMapFrames(ASMUtil.getMethod(classNode, "equals", "(Ljava/lang/Object;)Z"));
         }
     }
 
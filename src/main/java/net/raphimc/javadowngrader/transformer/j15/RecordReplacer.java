@@ -32,20 +32,7 @@ public class RecordReplacer {
     private static final String EQUALS_DESC = "(Ljava/lang/Object;)Z";
     private static final String HASHCODE_DESC = "()I";
     private static final String TOSTRING_DESC = "()Ljava/lang/String;";
-
-    private static final Map<String, String> PRIMITIVE_WRAPPERS = new HashMap<>();
-
-    static {
-        PRIMITIVE_WRAPPERS.put("V", Type.getInternalName(Void.class));
-        PRIMITIVE_WRAPPERS.put("Z", Type.getInternalName(Boolean.class));
-        PRIMITIVE_WRAPPERS.put("B", Type.getInternalName(Byte.class));
-        PRIMITIVE_WRAPPERS.put("S", Type.getInternalName(Short.class));
-        PRIMITIVE_WRAPPERS.put("C", Type.getInternalName(Character.class));
-        PRIMITIVE_WRAPPERS.put("I", Type.getInternalName(Integer.class));
-        PRIMITIVE_WRAPPERS.put("F", Type.getInternalName(Float.class));
-        PRIMITIVE_WRAPPERS.put("J", Type.getInternalName(Long.class));
-        PRIMITIVE_WRAPPERS.put("D", Type.getInternalName(Double.class));
-    }
+    private static final String SIMPLENAME_NAME = "javadowngrader-simpleName";
 
     public static boolean replace(final ClassNode classNode) {
         if (!Objects.equals(classNode.superName, "java/lang/Record")) return false;
@@ -89,45 +76,59 @@ public class RecordReplacer {
 
             final Label notEqualLabel = new Label();
             for (RecordField field : equalsFields) {
+                final Type type = Type.getType(field.descriptor);
                 equals.visitVarInsn(Opcodes.ALOAD, 0);
                 equals.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
+                if (type.getSort() == Type.FLOAT) {
+                    equals.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+                } else if (type.getSort() == Type.DOUBLE) {
+                    equals.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                }
                 equals.visitVarInsn(Opcodes.ALOAD, 2);
                 equals.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
-                if (Type.getType(field.descriptor).getSort() >= Type.ARRAY) { // ARRAY or OBJECT
-                    equals.visitMethodInsn(
-                            Opcodes.INVOKESTATIC,
-                            Type.getInternalName(Objects.class),
-                            "equals",
-                            "(Ljava/lang/Object;Ljava/lang/Object;)Z",
-                            false
-                    );
-                    equals.visitJumpInsn(Opcodes.IFEQ, notEqualLabel);
-                    continue;
-                } else if ("BSCIZ".contains(field.descriptor)) {
-                    equals.visitJumpInsn(Opcodes.IF_ICMPNE, notEqualLabel);
-                    continue;
-                } else if (field.descriptor.equals("F")) {
-                    equals.visitMethodInsn(
-                            Opcodes.INVOKESTATIC,
-                            Type.getInternalName(Float.class),
-                            "compare",
-                            "(FF)I",
-                            false
-                    );
-                } else if (field.descriptor.equals("D")) {
-                    equals.visitMethodInsn(
-                            Opcodes.INVOKESTATIC,
-                            Type.getInternalName(Double.class),
-                            "compare",
-                            "(DD)I",
-                            false
-                    );
-                } else if (field.descriptor.equals("J")) {
-                    equals.visitInsn(Opcodes.LCMP);
-                } else {
-                    throw new AssertionError("Unknown descriptor " + field.descriptor);
+                switch (type.getSort()) {
+                    case Type.OBJECT:
+                        // Same as Objects.equals, but the identity check is done before calling equals
+                        final Label equalLabel = new Label();
+                        equals.visitJumpInsn(Opcodes.IF_ACMPEQ, equalLabel);
+                        equals.visitVarInsn(Opcodes.ALOAD, 0);
+                        equals.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
+                        equals.visitJumpInsn(Opcodes.IFNULL, notEqualLabel);
+                        equals.visitVarInsn(Opcodes.ALOAD, 0);
+                        equals.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
+                        equals.visitVarInsn(Opcodes.ALOAD, 2);
+                        equals.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
+                        equals.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "equals", EQUALS_DESC, false);
+                        equals.visitJumpInsn(Opcodes.IFEQ, notEqualLabel);
+                        equals.visitLabel(equalLabel);
+                        break;
+                    case Type.ARRAY:
+                        // Arrays don't override equals
+                        equals.visitJumpInsn(Opcodes.IF_ACMPNE, notEqualLabel);
+                        break;
+                    case Type.FLOAT:
+                        equals.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+                        equals.visitJumpInsn(Opcodes.IF_ICMPNE, notEqualLabel);
+                        break;
+                    case Type.DOUBLE:
+                        equals.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                        equals.visitInsn(Opcodes.LCMP);
+                        equals.visitJumpInsn(Opcodes.IFNE, notEqualLabel);
+                        break;
+                    case Type.LONG:
+                        equals.visitInsn(Opcodes.LCMP);
+                        equals.visitJumpInsn(Opcodes.IFNE, notEqualLabel);
+                        break;
+                    case Type.BOOLEAN:
+                    case Type.BYTE:
+                    case Type.SHORT:
+                    case Type.CHAR:
+                    case Type.INT:
+                        equals.visitJumpInsn(Opcodes.IF_ICMPNE, notEqualLabel);
+                        break;
+                    default:
+                        throw new AssertionError("Unknown descriptor " + field.descriptor);
                 }
-                equals.visitJumpInsn(Opcodes.IFNE, notEqualLabel);
             }
             equals.visitInsn(Opcodes.ICONST_1);
             equals.visitInsn(Opcodes.IRETURN);
@@ -152,14 +153,29 @@ public class RecordReplacer {
                 hashCode.visitInsn(Opcodes.IMUL);
                 hashCode.visitVarInsn(Opcodes.ALOAD, 0);
                 hashCode.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
-                final String owner = PRIMITIVE_WRAPPERS.get(field.descriptor);
-                hashCode.visitMethodInsn(
-                        Opcodes.INVOKESTATIC,
-                        owner != null ? owner : "java/util/Objects",
-                        "hashCode",
-                        "(" + (owner != null ? field.descriptor : "Ljava/lang/Object;") + ")I",
-                        false
-                );
+                // Same results as the static hashCode methods of the wrapper classes
+                switch (Type.getType(field.descriptor).getSort()) {
+                    case Type.OBJECT:
+                    case Type.ARRAY:
+                        hashCode.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Objects", "hashCode", "(Ljava/lang/Object;)I", false);
+                        break;
+                    case Type.BOOLEAN:
+                        hashCode.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Boolean", "hashCode", "(Z)I", false);
+                        break;
+                    case Type.FLOAT:
+                        hashCode.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", false);
+                        break;
+                    case Type.DOUBLE:
+                        hashCode.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", false);
+                        // Fall through to hash the long bits
+                    case Type.LONG:
+                        hashCode.visitInsn(Opcodes.DUP2);
+                        hashCode.visitIntInsn(Opcodes.BIPUSH, 32);
+                        hashCode.visitInsn(Opcodes.LUSHR);
+                        hashCode.visitInsn(Opcodes.LXOR);
+                        hashCode.visitInsn(Opcodes.L2I);
+                        break;
+                }
                 hashCode.visitInsn(Opcodes.IADD);
             }
             hashCode.visitInsn(Opcodes.IRETURN);
@@ -175,20 +191,13 @@ public class RecordReplacer {
             final MethodVisitor toString = classNode.visitMethod(Opcodes.ACC_PUBLIC, "toString", TOSTRING_DESC, null, null);
             toString.visitCode();
 
-            final StringBuilder formatString = new StringBuilder("%s[");
-            for (int i = 0; i < classNode.recordComponents.size(); i++) {
-                formatString.append(classNode.recordComponents.get(i).name).append("=%s");
-                if (i != classNode.recordComponents.size() - 1) {
-                    formatString.append(", ");
-                }
-            }
-            formatString.append(']');
-
-            toString.visitLdcInsn(formatString.toString());
-            toString.visitIntInsn(Opcodes.SIPUSH, classNode.recordComponents.size() + 1);
-            toString.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            // Class.getSimpleName is slow on Java 8, so it is only called once and cached in a synthetic field
+            classNode.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, SIMPLENAME_NAME, "Ljava/lang/String;", null, null).visitEnd();
+            toString.visitFieldInsn(Opcodes.GETSTATIC, classNode.name, SIMPLENAME_NAME, "Ljava/lang/String;");
             toString.visitInsn(Opcodes.DUP);
-            toString.visitInsn(Opcodes.ICONST_0);
+            final Label cachedLabel = new Label();
+            toString.visitJumpInsn(Opcodes.IFNONNULL, cachedLabel);
+            toString.visitInsn(Opcodes.POP);
             toString.visitVarInsn(Opcodes.ALOAD, 0);
             toString.visitMethodInsn(
                     Opcodes.INVOKEVIRTUAL,
@@ -204,31 +213,35 @@ public class RecordReplacer {
                     "()Ljava/lang/String;",
                     false
             );
-            toString.visitInsn(Opcodes.AASTORE);
-            int i = 1;
-            for (RecordField field : toStringFields) {
-                toString.visitInsn(Opcodes.DUP);
-                toString.visitIntInsn(Opcodes.SIPUSH, i);
+            toString.visitInsn(Opcodes.DUP);
+            toString.visitFieldInsn(Opcodes.PUTSTATIC, classNode.name, SIMPLENAME_NAME, "Ljava/lang/String;");
+            toString.visitLabel(cachedLabel);
+            toString.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{"java/lang/String"});
+
+            final String[] prefixes = new String[toStringFields.length];
+            int capacity = 16 + 2; // Simple name and brackets
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = (i == 0 ? "[" : ", ") + classNode.recordComponents.get(i).name + "=";
+                capacity += prefixes[i].length() + 16;
+            }
+
+            toString.visitTypeInsn(Opcodes.NEW, "java/lang/StringBuilder");
+            toString.visitInsn(Opcodes.DUP);
+            toString.visitLdcInsn(capacity);
+            toString.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(I)V", false);
+            toString.visitInsn(Opcodes.SWAP);
+            toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            for (int i = 0; i < toStringFields.length; i++) {
+                final RecordField field = toStringFields[i];
+                toString.visitLdcInsn(prefixes[i]);
+                toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
                 toString.visitVarInsn(Opcodes.ALOAD, 0);
                 toString.visitFieldInsn(Opcodes.GETFIELD, classNode.name, field.name, field.descriptor);
-                final String owner = PRIMITIVE_WRAPPERS.get(field.descriptor);
-                toString.visitMethodInsn(
-                        Opcodes.INVOKESTATIC,
-                        owner != null ? owner : "java/util/Objects",
-                        "toString",
-                        "(" + (owner != null ? field.descriptor : "Ljava/lang/Object;") + ")Ljava/lang/String;",
-                        false
-                );
-                toString.visitInsn(Opcodes.AASTORE);
-                i++;
+                toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(" + getAppendDescriptor(field.descriptor) + ")Ljava/lang/StringBuilder;", false);
             }
-            toString.visitMethodInsn(
-                    Opcodes.INVOKESTATIC,
-                    "java/lang/String",
-                    "format",
-                    "(Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/String;",
-                    false
-            );
+            toString.visitLdcInsn(prefixes.length == 0 ? "[]" : "]");
+            toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
             toString.visitInsn(Opcodes.ARETURN);
 
             toString.visitEnd();
@@ -238,6 +251,24 @@ public class RecordReplacer {
         return true;
     }
 
+    private static String getAppendDescriptor(final String descriptor) {
+        switch (descriptor) {
+            case "B":
+            case "S":
+                return "I";
+            case "Z":
+            case "C":
+            case "I":
+            case "J":
+            case "F":
+            case "D":
+            case "Ljava/lang/String;":
+                return descriptor;
+            default:
+                return "Ljava/lang/Object;";
+        }
+    }
+
     private static RecordField[] getFields(final MethodNode method) {
         for (AbstractInsnNode instruction : method.instructions) {
             if (!(instruction instanceof InvokeDynamicInsnNode)) continue;
@@ -20,23 +20,25 @@ package net.raphimc.javadowngrader.transformer.j15.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class StreamToListMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/stream/Streams");
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/stream/Streams$ArrayAccumulator");
+        ImmutableCollectionsRuntime.collectDependencies(depCollector);
+
         final InsnList replacement = new InsnList();
 
         // Stream
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toList", "()Ljava/util/stream/Collector;"));
-        // Stream Collector
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, "java/util/stream/Stream", "collect", "(Ljava/util/stream/Collector;)Ljava/lang/Object;"));
-        // Object
-        replacement.add(new TypeInsnNode(Opcodes.CHECKCAST, "java/util/List"));
-        // List
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Collections", "unmodifiableList", "(Ljava/util/List;)Ljava/util/List;"));
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/stream/Streams", "toList", "(Ljava/util/stream/Stream;)Ljava/util/List;"));
         // List
 
         return replacement;
@@ -67,6 +67,7 @@ public class RandomSupportBoundedNextLongCreator {
         final Label elseEnd = new Label();
         boundedNextLong.visitJumpInsn(Opcodes.GOTO, elseEnd);
         boundedNextLong.visitLabel(elseStart);
+        boundedNextLong.visitFrame(Opcodes.F_APPEND, 2, new Object[]{Opcodes.LONG, Opcodes.LONG}, 0, null);
 
         // long u = r >>> 1;
         boundedNextLong.visitVarInsn(Opcodes.LLOAD, 5);
@@ -78,6 +79,7 @@ public class RandomSupportBoundedNextLongCreator {
         final Label whileStart = new Label();
         final Label whileEnd = new Label();
         boundedNextLong.visitLabel(whileStart);
+        boundedNextLong.visitFrame(Opcodes.F_APPEND, 1, new Object[]{Opcodes.LONG}, 0, null);
         boundedNextLong.visitVarInsn(Opcodes.LLOAD, 7);
         boundedNextLong.visitVarInsn(Opcodes.LLOAD, 3);
         boundedNextLong.visitInsn(Opcodes.LADD);
@@ -104,6 +106,7 @@ public class RandomSupportBoundedNextLongCreator {
 
         // }
         boundedNextLong.visitLabel(elseEnd);
+        boundedNextLong.visitFrame(Opcodes.F_CHOP, 1, null, 0, null);
 
         // return r;
         boundedNextLong.visitVarInsn(Opcodes.LLOAD, 5);
@@ -61,6 +61,7 @@ public class RandomSupportCheckBoundCreator {
 
         // }
         checkBound.visitLabel(ifEnd);
+        checkBound.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
 
         // }
         checkBound.visitInsn(Opcodes.RETURN);
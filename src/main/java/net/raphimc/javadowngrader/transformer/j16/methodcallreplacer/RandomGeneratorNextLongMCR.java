@@ -36,13 +36,8 @@ public class RandomGeneratorNextLongMCR implements MethodCallReplacer {
     public InsnList getReplacement(ClassNode classNode, MethodNode method, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
         final InsnList replacement = new InsnList();
 
-        if (RandomSupportCheckBoundCreator.ensureHasMethod(classNode)) {
-            result.setRequiresStackMapFrames();
-        }
-        if (RandomSupportBoundedNextLongCreator.ensureHasMethod(classNode)) {
-            result.setRequiresStackMapFrames();
-        }
-
+        RandomSupportCheckBoundCreator.ensureHasMethod(classNode);
+        RandomSupportBoundedNextLongCreator.ensureHasMethod(classNode);
 
         // Random long1 long2
         replacement.add(new InsnNode(Opcodes.DUP2));
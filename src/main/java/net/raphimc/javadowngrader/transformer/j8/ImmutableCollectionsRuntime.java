@@ -0,0 +1,40 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.transformer.j8;
+
+import net.raphimc.javadowngrader.RuntimeDepCollector;
+
+public class ImmutableCollectionsRuntime {
+
+    public static final String IMMUTABLECOLLECTIONS = "net/raphimc/javadowngrader/runtime/java/util/ImmutableCollections";
+
+    private static final String[] NESTED_CLASSES = new String[]{
+            "AbstractImmutableList", "List12", "ListN",
+            "AbstractImmutableSet", "Set12", "SetN", "ArrayItr",
+            "AbstractImmutableMap", "Map1", "MapN", "MapNEntrySet", "MapNItr",
+            "CollSer"
+    };
+
+    public static void collectDependencies(final RuntimeDepCollector depCollector) {
+        depCollector.accept(IMMUTABLECOLLECTIONS);
+        for (String nestedClass : NESTED_CLASSES) {
+            depCollector.accept(IMMUTABLECOLLECTIONS + "$" + nestedClass);
+        }
+    }
+
+}
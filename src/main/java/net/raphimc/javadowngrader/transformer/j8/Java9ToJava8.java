@@ -19,9 +19,11 @@ package net.raphimc.javadowngrader.transformer.j8;
 
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.DowngradingTransformer;
+import net.raphimc.javadowngrader.transformer.MethodContext;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.BufferMCR;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.ClassGetModuleMCR;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.InputStreamReadAllBytesMCR;
+import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.InputStreamReadNBytesMCR;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.InputStreamTransferToMCR;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.IntegerParseIntMCR;
 import net.raphimc.javadowngrader.transformer.j8.methodcallreplacer.ListOfMCR;
@@ -58,11 +60,12 @@ public class Java9ToJava8 extends DowngradingTransformer {
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/Map", "entry", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/util/Map$Entry;", new MapEntryMCR());
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/Map", "ofEntries", "([Ljava/util/Map$Entry;)Ljava/util/Map;", new MapOfEntriesMCR());
 
-        this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/io/InputStream", "transferTo", "(Ljava/io/OutputStream;)J", new InputStreamTransferToMCR());
-        this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/io/ByteArrayInputStream", "transferTo", "(Ljava/io/OutputStream;)J", new InputStreamTransferToMCR());
-        this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/io/InputStream", "readAllBytes", "()[B", new InputStreamReadAllBytesMCR());
-        this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/io/FileInputStream", "readAllBytes", "()[B", new InputStreamReadAllBytesMCR());
-        this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, "java/io/ByteArrayInputStream", "readAllBytes", "()[B", new InputStreamReadAllBytesMCR());
+        final String[] inputStreamClasses = new String[]{"java/io/InputStream", "java/io/FileInputStream", "java/io/ByteArrayInputStream"};
+        for (String inputStreamClass : inputStreamClasses) {
+            this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, inputStreamClass, "transferTo", "(Ljava/io/OutputStream;)J", new InputStreamTransferToMCR());
+            this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, inputStreamClass, "readAllBytes", "()[B", new InputStreamReadAllBytesMCR());
+            this.addMethodCallReplacer(Opcodes.INVOKEVIRTUAL, inputStreamClass, "readNBytes", "([BII)I", new InputStreamReadNBytesMCR());
+        }
 
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/Objects", "requireNonNullElse", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", new ObjectsRequireNonNullElseMCR());
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/Objects", "requireNonNullElseGet", "(Ljava/lang/Object;Ljava/util/function/Supplier;)Ljava/lang/Object;", new ObjectsRequireNonNullElseGetMCR());
@@ -112,11 +115,19 @@ public class Java9ToJava8 extends DowngradingTransformer {
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/lang/Integer", "parseUnsignedInt", "(Ljava/lang/CharSequence;III)I", new IntegerParseIntMCR());
 
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/lang/Thread", "onSpinWait", new ThreadOnSpinWaitMCR());
+
+        this.addAccessTrigger(Opcodes.ACC_INTERFACE);
+        this.addMethodTrigger("java/lang/invoke/StringConcatFactory");
+    }
+
+    @Override
+    protected void transformMethod(MethodContext context, DowngradeResult result) {
+        StringConcatFactoryReplacer.replace(context);
     }
 
     @Override
-    protected void preTransform(ClassNode classNode, DowngradeResult result) {
-        StringConcatFactoryReplacer.replace(classNode);
+    protected void postTransform(ClassNode classNode, DowngradeResult result) {
+        // Run after the method call replacers so private bridges and helper methods are covered as well
         this.makeInterfaceMethodsPublic(classNode);
     }
 
@@ -17,7 +17,7 @@
  */
 package net.raphimc.javadowngrader.transformer.j8;
 
-import net.raphimc.javadowngrader.util.ASMUtil;
+import net.raphimc.javadowngrader.transformer.MethodContext;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
@@ -28,36 +28,41 @@ public class StringConcatFactoryReplacer {
 
     private static final char STACK_ARG_CONSTANT = '\u0001';
     private static final char BSM_ARG_CONSTANT = '\u0002';
+    private static final int MAX_CONSTANT_LENGTH = 16384; // Keeps the modified UTF-8 encoding of a single ldc below 65535 bytes
 
     public static void replace(final ClassNode classNode) {
         for (MethodNode methodNode : classNode.methods) {
-            for (AbstractInsnNode instruction : methodNode.instructions.toArray()) {
-                if (instruction.getOpcode() == Opcodes.INVOKEDYNAMIC) {
-                    final InvokeDynamicInsnNode insn = (InvokeDynamicInsnNode) instruction;
-                    if (insn.bsm.getOwner().equals("java/lang/invoke/StringConcatFactory") && insn.bsm.getName().equals("makeConcatWithConstants")) {
-                        final String pattern = (String) insn.bsmArgs[0];
-                        final Type[] stackArgs = Type.getArgumentTypes(insn.desc);
-                        final Object[] bsmArgs = Arrays.copyOfRange(insn.bsmArgs, 1, insn.bsmArgs.length);
-                        final int stackArgsCount = count(pattern, STACK_ARG_CONSTANT);
-                        final int bsmArgsCount = count(pattern, BSM_ARG_CONSTANT);
-
-                        if (stackArgs.length != stackArgsCount) throw new IllegalStateException("Stack args count does not match");
-                        if (bsmArgs.length != bsmArgsCount) throw new IllegalStateException("BSM args count does not match");
-
-                        int freeVarIndex = ASMUtil.getFreeVarIndex(methodNode);
-                        final int[] stackIndices = new int[stackArgsCount];
-                        for (int i = 0; i < stackArgs.length; i++) {
-                            stackIndices[i] = freeVarIndex;
-                            freeVarIndex += stackArgs[i].getSize();
-                        }
-                        for (int i = stackIndices.length - 1; i >= 0; i--) {
-                            methodNode.instructions.insertBefore(insn, new VarInsnNode(stackArgs[i].getOpcode(Opcodes.ISTORE), stackIndices[i]));
-                        }
-
-                        final InsnList converted = convertStringConcatFactory(pattern, stackArgs, stackIndices, bsmArgs);
-                        methodNode.instructions.insertBefore(insn, converted);
-                        methodNode.instructions.remove(insn);
+            replace(new MethodContext(classNode, methodNode));
+        }
+    }
+
+    public static void replace(final MethodContext context) {
+        final MethodNode methodNode = context.getMethodNode();
+        for (AbstractInsnNode instruction : methodNode.instructions.toArray()) {
+            if (instruction.getOpcode() == Opcodes.INVOKEDYNAMIC) {
+                final InvokeDynamicInsnNode insn = (InvokeDynamicInsnNode) instruction;
+                if (insn.bsm.getOwner().equals("java/lang/invoke/StringConcatFactory") && insn.bsm.getName().equals("makeConcatWithConstants")) {
+                    final String pattern = (String) insn.bsmArgs[0];
+                    final Type[] stackArgs = Type.getArgumentTypes(insn.desc);
+                    final Object[] bsmArgs = Arrays.copyOfRange(insn.bsmArgs, 1, insn.bsmArgs.length);
+                    final int stackArgsCount = count(pattern, STACK_ARG_CONSTANT);
+                    final int bsmArgsCount = count(pattern, BSM_ARG_CONSTANT);
+
+                    if (stackArgs.length != stackArgsCount) throw new IllegalStateException("Stack args count does not match");
+                    if (bsmArgs.length != bsmArgsCount) throw new IllegalStateException("BSM args count does not match");
+
+                    // The first stack argument stays on the stack and is swapped below the StringBuilder later
+                    final int[] stackIndices = new int[stackArgsCount];
+                    for (int i = 1; i < stackArgs.length; i++) {
+                        stackIndices[i] = context.allocateLocal(stackArgs[i]);
                     }
+                    for (int i = stackIndices.length - 1; i >= 1; i--) {
+                        methodNode.instructions.insertBefore(insn, new VarInsnNode(stackArgs[i].getOpcode(Opcodes.ISTORE), stackIndices[i]));
+                    }
+
+                    final InsnList converted = convertStringConcatFactory(pattern, stackArgs, stackIndices, bsmArgs);
+                    methodNode.instructions.insertBefore(insn, converted);
+                    methodNode.instructions.remove(insn);
                 }
             }
         }
@@ -68,48 +73,115 @@ public class StringConcatFactoryReplacer {
         final char[] chars = pattern.toCharArray();
         int stackArgsIndex = 0;
         int bsmArgsIndex = 0;
+        int capacity = 0;
         StringBuilder partBuilder = new StringBuilder();
 
+        for (char c : chars) {
+            if (c == STACK_ARG_CONSTANT) {
+                capacity += estimateLength(stackArgs[stackArgsIndex++]);
+            } else if (c == BSM_ARG_CONSTANT) {
+                final Object bsmArg = bsmArgs[bsmArgsIndex++];
+                if (isFoldable(bsmArg)) {
+                    capacity += String.valueOf(bsmArg).length();
+                }
+            } else {
+                capacity++;
+            }
+        }
+        stackArgsIndex = 0;
+        bsmArgsIndex = 0;
+
         insns.add(new TypeInsnNode(Opcodes.NEW, "java/lang/StringBuilder"));
         insns.add(new InsnNode(Opcodes.DUP));
-        insns.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V"));
+        insns.add(new LdcInsnNode(capacity));
+        insns.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(I)V"));
         for (char c : chars) {
             if (c == STACK_ARG_CONSTANT) {
-                if (partBuilder.length() != 0) {
-                    insns.add(new LdcInsnNode(partBuilder.toString()));
-                    insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;"));
-                    partBuilder = new StringBuilder();
-                }
+                appendConstant(insns, partBuilder);
+                partBuilder = new StringBuilder();
 
                 final Type stackArg = stackArgs[stackArgsIndex++];
-                final int stackIndex = stackIndices[stackArgsIndex - 1];
-                if (stackArg.getSort() == Type.OBJECT) {
-                    insns.add(new VarInsnNode(Opcodes.ALOAD, stackIndex));
-                    insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/Object;)Ljava/lang/StringBuilder;"));
-                } else if (stackArg.getSort() == Type.ARRAY) {
-                    insns.add(new VarInsnNode(Opcodes.ALOAD, stackIndex));
-                    insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Arrays", "toString", "([Ljava/lang/Object;)Ljava/lang/String;"));
-                    insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;"));
+                if (stackArgsIndex == 1) {
+                    if (stackArg.getSize() == 2) {
+                        insns.add(new InsnNode(Opcodes.DUP_X2));
+                        insns.add(new InsnNode(Opcodes.POP));
+                    } else {
+                        insns.add(new InsnNode(Opcodes.SWAP));
+                    }
                 } else {
-                    insns.add(new VarInsnNode(stackArg.getOpcode(Opcodes.ILOAD), stackIndex));
-                    insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(" + stackArg.getDescriptor() + ")Ljava/lang/StringBuilder;"));
+                    insns.add(new VarInsnNode(stackArg.getOpcode(Opcodes.ILOAD), stackIndices[stackArgsIndex - 1]));
                 }
+                insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(" + getAppendType(stackArg).getDescriptor() + ")Ljava/lang/StringBuilder;"));
             } else if (c == BSM_ARG_CONSTANT) {
-                insns.add(new LdcInsnNode(bsmArgs[bsmArgsIndex++]));
-                insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/Object;)Ljava/lang/StringBuilder;"));
+                final Object bsmArg = bsmArgs[bsmArgsIndex++];
+                if (isFoldable(bsmArg)) {
+                    partBuilder.append(bsmArg);
+                } else {
+                    appendConstant(insns, partBuilder);
+                    partBuilder = new StringBuilder();
+
+                    insns.add(new LdcInsnNode(bsmArg));
+                    insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/Object;)Ljava/lang/StringBuilder;"));
+                }
             } else {
                 partBuilder.append(c);
             }
         }
-        if (partBuilder.length() != 0) {
-            insns.add(new LdcInsnNode(partBuilder.toString()));
-            insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;"));
-        }
+        appendConstant(insns, partBuilder);
         insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;"));
 
         return insns;
     }
 
+    private static void appendConstant(final InsnList insns, final CharSequence constant) {
+        for (int i = 0; i < constant.length(); i += MAX_CONSTANT_LENGTH) {
+            insns.add(new LdcInsnNode(constant.subSequence(i, Math.min(constant.length(), i + MAX_CONSTANT_LENGTH)).toString()));
+            insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;"));
+        }
+    }
+
+    private static boolean isFoldable(final Object bsmArg) {
+        // Floating point constants are not folded because their string representation depends on the Java version
+        return bsmArg instanceof String || bsmArg instanceof Integer || bsmArg instanceof Long;
+    }
+
+    private static Type getAppendType(final Type type) {
+        switch (type.getSort()) {
+            case Type.BYTE:
+            case Type.SHORT:
+                return Type.INT_TYPE;
+            case Type.OBJECT:
+                return type.getInternalName().equals("java/lang/String") ? type : Type.getType(Object.class);
+            case Type.ARRAY:
+                return Type.getType(Object.class);
+            default:
+                return type;
+        }
+    }
+
+    private static int estimateLength(final Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return 5;
+            case Type.CHAR:
+                return 1;
+            case Type.BYTE:
+                return 4;
+            case Type.SHORT:
+                return 6;
+            case Type.INT:
+                return 11;
+            case Type.LONG:
+                return 20;
+            case Type.FLOAT:
+                return 15;
+            case Type.DOUBLE:
+                return 24;
+            default:
+                return 16;
+        }
+    }
+
     private static int count(final String s, final char search) {
         final char[] chars = s.toCharArray();
         int count = 0;
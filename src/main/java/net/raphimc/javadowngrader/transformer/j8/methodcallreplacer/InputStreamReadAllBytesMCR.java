@@ -20,39 +20,20 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.transformer.j8.InputStreamTransferToCreator;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
-
-import static net.raphimc.javadowngrader.transformer.j8.InputStreamTransferToCreator.TRANSFERTO_DESC;
-import static net.raphimc.javadowngrader.transformer.j8.InputStreamTransferToCreator.TRANSFERTO_NAME;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class InputStreamReadAllBytesMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        if (InputStreamTransferToCreator.ensureHasMethod(classNode)) {
-            result.setRequiresStackMapFrames();
-        }
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/io/InputStreams");
 
         final InsnList replacement = new InsnList();
-
-        // InputStream
-        replacement.add(new TypeInsnNode(Opcodes.NEW, "java/io/ByteArrayOutputStream"));
-        // InputStream ByteArrayOutputStream?
-        replacement.add(new InsnNode(Opcodes.DUP));
-        // InputStream ByteArrayOutputStream? ByteArrayOutputStream?
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/io/ByteArrayOutputStream", "<init>", "()V"));
-        // InputStream ByteArrayOutputStream
-        replacement.add(new InsnNode(Opcodes.DUP_X1));
-        // ByteArrayOutputStream InputStream ByteArrayOutputStream
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, classNode.name, TRANSFERTO_NAME, TRANSFERTO_DESC));
-        // ByteArrayOutputStream long1 long2
-        replacement.add(new InsnNode(Opcodes.POP2));
-        // ByteArrayOutputStream
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/io/ByteArrayOutputStream", "toByteArray", "()[B"));
-        // byte[]
-
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/io/InputStreams", "readAllBytes", "(Ljava/io/InputStream;)[B"));
         return replacement;
     }
 
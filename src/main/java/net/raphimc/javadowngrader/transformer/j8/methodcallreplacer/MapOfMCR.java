@@ -20,57 +20,23 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.util.ASMUtil;
+import net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import static net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime.IMMUTABLECOLLECTIONS;
 
 public class MapOfMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        final InsnList replacement = new InsnList();
-
-        final Type[] args = Type.getArgumentTypes(originalDesc);
-
-        final int argCount = args.length;
-        if (argCount % 2 != 0) {
-            throw new RuntimeException("Map.of() requires an even number of arguments");
-        }
-
-        if (argCount == 0) {
-            replacement.add(new MethodInsnNode(
-                Opcodes.INVOKESTATIC,
-                "java/util/Collections",
-                "emptyMap",
-                "()Ljava/util/Map;"
-            ));
-            return replacement;
-        } else if (argCount == 2) {
-            replacement.add(new MethodInsnNode(
-                Opcodes.INVOKESTATIC,
-                "java/util/Collections",
-                "singletonMap",
-                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/util/Map;"
-            ));
-            return replacement;
-        }
-        final int freeVarIndex = ASMUtil.getFreeVarIndex(methodNode);
-
-        replacement.add(new TypeInsnNode(Opcodes.NEW, "java/util/HashMap"));
-        replacement.add(new InsnNode(Opcodes.DUP));
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/util/HashMap", "<init>", "()V"));
-        replacement.add(new VarInsnNode(Opcodes.ASTORE, freeVarIndex));
-        for (int i = 0; i < argCount / 2; i++) {
-            replacement.add(new VarInsnNode(Opcodes.ALOAD, freeVarIndex));
-            replacement.add(new InsnNode(Opcodes.DUP_X2));
-            replacement.add(new InsnNode(Opcodes.POP));
-            replacement.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, "java/util/Map", "put", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;"));
-            replacement.add(new InsnNode(Opcodes.POP));
-        }
-        replacement.add(new VarInsnNode(Opcodes.ALOAD, freeVarIndex));
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Collections", "unmodifiableMap", "(Ljava/util/Map;)Ljava/util/Map;"));
+        ImmutableCollectionsRuntime.collectDependencies(depCollector);
 
+        final InsnList replacement = new InsnList();
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, IMMUTABLECOLLECTIONS, "mapOf", originalDesc));
         return replacement;
     }
 
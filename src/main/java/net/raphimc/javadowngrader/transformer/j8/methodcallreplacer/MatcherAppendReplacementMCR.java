@@ -20,46 +20,22 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.util.ASMUtil;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class MatcherAppendReplacementMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        final InsnList replacement = new InsnList();
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/regex/Matchers");
 
-        final int stringBufferIndex = ASMUtil.getFreeVarIndex(methodNode); // StringBuffer
+        final InsnList replacement = new InsnList();
 
         // Matcher StringBuilder String
-        replacement.add(new TypeInsnNode(Opcodes.NEW, "java/lang/StringBuffer"));
-        // Matcher StringBuilder String StringBuffer?
-        replacement.add(new InsnNode(Opcodes.DUP));
-        // Matcher StringBuilder String StringBuffer? StringBuffer?
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuffer", "<init>", "()V"));
-        // Matcher StringBuilder String StringBuffer
-        replacement.add(new VarInsnNode(Opcodes.ASTORE, stringBufferIndex));
-        // Matcher StringBuilder String
-        replacement.add(new InsnNode(Opcodes.DUP2_X1));
-        // StringBuilder String Matcher StringBuilder String
-        replacement.add(new InsnNode(Opcodes.POP2));
-        // StringBuilder String Matcher
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // StringBuilder Matcher String
-        replacement.add(new VarInsnNode(Opcodes.ALOAD, stringBufferIndex));
-        // StringBuilder Matcher String StringBuffer
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // StringBuilder Matcher StringBuffer String
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/regex/Matcher", "appendReplacement", "(Ljava/lang/StringBuffer;Ljava/lang/String;)Ljava/util/regex/Matcher;"));
-        // StringBuilder Matcher
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // Matcher StringBuilder
-        replacement.add(new VarInsnNode(Opcodes.ALOAD, stringBufferIndex));
-        // Matcher StringBuilder StringBuffer
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/StringBuffer;)Ljava/lang/StringBuilder;"));
-        // Matcher StringBuilder
-        replacement.add(new InsnNode(Opcodes.POP));
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/regex/Matchers", "appendReplacement", "(Ljava/util/regex/Matcher;Ljava/lang/StringBuilder;Ljava/lang/String;)Ljava/util/regex/Matcher;"));
         // Matcher
 
         return replacement;
@@ -20,38 +20,22 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.util.ASMUtil;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class MatcherAppendTailMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        final InsnList replacement = new InsnList();
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/regex/Matchers");
 
-        final int stringBufferIndex = ASMUtil.getFreeVarIndex(methodNode); // StringBuffer
+        final InsnList replacement = new InsnList();
 
         // Matcher StringBuilder
-        replacement.add(new TypeInsnNode(Opcodes.NEW, "java/lang/StringBuffer"));
-        // Matcher StringBuilder StringBuffer?
-        replacement.add(new InsnNode(Opcodes.DUP));
-        // Matcher StringBuilder StringBuffer? StringBuffer?
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuffer", "<init>", "()V"));
-        // Matcher StringBuilder StringBuffer
-        replacement.add(new VarInsnNode(Opcodes.ASTORE, stringBufferIndex));
-        // Matcher StringBuilder
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // StringBuilder Matcher
-        replacement.add(new VarInsnNode(Opcodes.ALOAD, stringBufferIndex));
-        // StringBuilder Matcher StringBuffer
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/regex/Matcher", "appendTail", "(Ljava/lang/StringBuffer;)Ljava/lang/StringBuffer;"));
-        // StringBuilder StringBuffer
-        replacement.add(new InsnNode(Opcodes.POP));
-        // StringBuilder
-        replacement.add(new VarInsnNode(Opcodes.ALOAD, stringBufferIndex));
-        // StringBuilder StringBuffer
-        replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/StringBuffer;)Ljava/lang/StringBuilder;"));
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/regex/Matchers", "appendTail", "(Ljava/util/regex/Matcher;Ljava/lang/StringBuilder;)Ljava/lang/StringBuilder;"));
         // StringBuilder
 
         return replacement;
@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -46,6 +47,7 @@ public class ObjectsRequireNonNullElseGetMCR implements MethodCallReplacer {
         replacement.add(new JumpInsnNode(Opcodes.GOTO, endJump));
 
         replacement.add(elseJump);
+        replacement.add(new RelativeFrameNode(2, "java/util/function/Supplier", "java/lang/Object"));
         // Supplier Object
         replacement.add(new InsnNode(Opcodes.POP));
         // Supplier
@@ -60,9 +62,9 @@ public class ObjectsRequireNonNullElseGetMCR implements MethodCallReplacer {
         replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Objects", "requireNonNull", "(Ljava/lang/Object;Ljava/lang/String;)Ljava/lang/Object;"));
         // Object
         replacement.add(endJump);
+        replacement.add(new RelativeFrameNode(2, "java/lang/Object"));
         // Object
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
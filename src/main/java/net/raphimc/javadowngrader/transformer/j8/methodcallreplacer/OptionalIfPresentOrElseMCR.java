@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -56,6 +57,7 @@ public class OptionalIfPresentOrElseMCR implements MethodCallReplacer {
         replacement.add(new JumpInsnNode(Opcodes.GOTO, elseEnd));
 
         replacement.add(elseStart);
+        replacement.add(new RelativeFrameNode(3, "java/util/function/Consumer", "java/lang/Runnable", "java/util/Optional"));
         // Consumer Runnable Optional
         replacement.add(new InsnNode(Opcodes.POP));
         // Consumer Runnable
@@ -65,9 +67,9 @@ public class OptionalIfPresentOrElseMCR implements MethodCallReplacer {
         //
 
         replacement.add(elseEnd);
+        replacement.add(new RelativeFrameNode(3));
         //
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -46,6 +47,7 @@ public class OptionalOrMCR implements MethodCallReplacer {
         replacement.add(new JumpInsnNode(Opcodes.GOTO, endLabel));
 
         replacement.add(ifPresentLabel);
+        replacement.add(new RelativeFrameNode(2, "java/util/Optional", "java/util/function/Supplier"));
         // Optional Supplier
         replacement.add(new InsnNode(Opcodes.SWAP));
         // Supplier Optional
@@ -56,9 +58,9 @@ public class OptionalOrMCR implements MethodCallReplacer {
         replacement.add(new TypeInsnNode(Opcodes.CHECKCAST, "java/util/Optional"));
         // Optional
         replacement.add(endLabel);
+        replacement.add(new RelativeFrameNode(2, "java/util/Optional"));
         // Optional
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j8.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -62,6 +63,7 @@ public class OptionalStreamMCR implements MethodCallReplacer {
         replacement.add(new JumpInsnNode(Opcodes.GOTO, elseEnd));
 
         replacement.add(elseStart);
+        replacement.add(new RelativeFrameNode(1, optionalType));
         // Optional
         replacement.add(new InsnNode(Opcodes.POP));
         //
@@ -75,9 +77,9 @@ public class OptionalStreamMCR implements MethodCallReplacer {
         // Stream
 
         replacement.add(elseEnd);
+        replacement.add(new RelativeFrameNode(1, streamType));
         // Stream
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
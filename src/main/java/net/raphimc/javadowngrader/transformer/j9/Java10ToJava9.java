@@ -31,6 +31,7 @@ public class Java10ToJava9 extends DowngradingTransformer {
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/Map", "copyOf", "(Ljava/util/Map;)Ljava/util/Map;", new MapCopyOfMCR());
 
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toUnmodifiableMap", "(Ljava/util/function/Function;Ljava/util/function/Function;)Ljava/util/stream/Collector;", new CollectorsToUnmodifiableMapMCR());
+        this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toUnmodifiableMap", "(Ljava/util/function/Function;Ljava/util/function/Function;Ljava/util/function/BinaryOperator;)Ljava/util/stream/Collector;", new CollectorsToUnmodifiableMapMCR());
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toUnmodifiableList", "()Ljava/util/stream/Collector;", new CollectorsToUnmodifiableListMCR());
         this.addMethodCallReplacer(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toUnmodifiableSet", "()Ljava/util/stream/Collector;", new CollectorsToUnmodifiableSetMCR());
 
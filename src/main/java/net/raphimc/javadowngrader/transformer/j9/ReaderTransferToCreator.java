@@ -62,6 +62,7 @@ public class ReaderTransferToCreator {
         final Label whileStart = new Label();
         final Label whileEnd = new Label();
         transferTo.visitLabel(whileStart);
+        transferTo.visitFrame(Opcodes.F_APPEND, 2, new Object[]{Opcodes.LONG, "[C"}, 0, null);
         transferTo.visitVarInsn(Opcodes.ALOAD, 0);
         transferTo.visitVarInsn(Opcodes.ALOAD, 4);
         transferTo.visitInsn(Opcodes.ICONST_0);
@@ -100,6 +101,7 @@ public class ReaderTransferToCreator {
         // }
         transferTo.visitJumpInsn(Opcodes.GOTO, whileStart);
         transferTo.visitLabel(whileEnd);
+        transferTo.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
 
         // return transferred;
         transferTo.visitVarInsn(Opcodes.LLOAD, 2);
@@ -20,7 +20,7 @@ package net.raphimc.javadowngrader.transformer.j9.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
-import net.raphimc.javadowngrader.transformer.j9.ToUnmodifiableHelper;
+import net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InsnList;
@@ -31,10 +31,13 @@ public class CollectorsToUnmodifiableMapMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/stream/Streams");
+        depCollector.accept("net/raphimc/javadowngrader/runtime/java/util/stream/Streams$ArrayAccumulator");
+        ImmutableCollectionsRuntime.collectDependencies(depCollector);
+
         final InsnList replacement = new InsnList();
 
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/stream/Collectors", "toMap", "(Ljava/util/function/Function;Ljava/util/function/Function;)Ljava/util/stream/Collector;"));
-        ToUnmodifiableHelper.toUnmodifiable(replacement, "Map");
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/raphimc/javadowngrader/runtime/java/util/stream/Streams", "toUnmodifiableMap", originalDesc));
 
         return replacement;
     }
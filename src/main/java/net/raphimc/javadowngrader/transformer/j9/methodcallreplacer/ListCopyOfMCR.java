@@ -20,27 +20,23 @@ package net.raphimc.javadowngrader.transformer.j9.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import static net.raphimc.javadowngrader.transformer.j8.ImmutableCollectionsRuntime.IMMUTABLECOLLECTIONS;
 
 public class ListCopyOfMCR implements MethodCallReplacer {
 
     @Override
     public InsnList getReplacement(ClassNode classNode, MethodNode methodNode, String originalName, String originalDesc, RuntimeDepCollector depCollector, DowngradeResult result) {
-        final InsnList replacement = new InsnList();
-
-        // Collection
-        replacement.add(new TypeInsnNode(Opcodes.NEW, "java/util/ArrayList"));
-        // Collection ArrayList?
-        replacement.add(new InsnNode(Opcodes.DUP_X1));
-        // ArrayList? Collection ArrayList?
-        replacement.add(new InsnNode(Opcodes.SWAP));
-        // ArrayList? ArrayList? Collection
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/util/ArrayList", "<init>", "(Ljava/util/Collection;)V"));
-        // ArrayList
-        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/util/Collections", "unmodifiableList", "(Ljava/util/List;)Ljava/util/List;"));
-        // List
+        ImmutableCollectionsRuntime.collectDependencies(depCollector);
 
+        final InsnList replacement = new InsnList();
+        replacement.add(new MethodInsnNode(Opcodes.INVOKESTATIC, IMMUTABLECOLLECTIONS, "listCopyOf", originalDesc));
         return replacement;
     }
 
@@ -20,6 +20,7 @@ package net.raphimc.javadowngrader.transformer.j9.methodcallreplacer;
 import net.raphimc.javadowngrader.RuntimeDepCollector;
 import net.raphimc.javadowngrader.transformer.DowngradeResult;
 import net.raphimc.javadowngrader.transformer.MethodCallReplacer;
+import net.raphimc.javadowngrader.transformer.RelativeFrameNode;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -51,12 +52,12 @@ public class OptionalOrElseThrowMCR implements MethodCallReplacer {
         //
 
         replacement.add(ifNeq);
+        replacement.add(new RelativeFrameNode(1, "java/util/Optional"));
         // Optional
         replacement.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/util/Optional", "get", "()Ljava/lang/Object;"));
         // Object
         replacement.add(end);
 
-        result.setRequiresStackMapFrames();
         return replacement;
     }
 
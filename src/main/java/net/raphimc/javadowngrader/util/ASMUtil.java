@@ -17,11 +17,14 @@
  */
 package net.raphimc.javadowngrader.util;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.lang.reflect.Modifier;
+import java.util.Collection;
 
 public class ASMUtil {
 
@@ -53,4 +56,27 @@ public class ASMUtil {
         return null;
     }
 
+    /**
+     * Recalculates the stack map frames of some methods of a class.<br>
+     * The methods are replaced in the class with copies containing the new frames.
+     *
+     * @param classNode The class containing the methods
+     * @param methods   The methods to recalculate the frames of
+     * @param writer    A new {@link ClassWriter} with {@link ClassWriter#COMPUTE_FRAMES} which is able to resolve the class hierarchy
+     */
+    public static void computeStackMapFrames(final ClassNode classNode, final Collection<MethodNode> methods, final ClassWriter writer) {
+        writer.visit(classNode.version, classNode.access, classNode.name, classNode.signature, classNode.superName, classNode.interfaces.toArray(new String[0]));
+        for (MethodNode methodNode : methods) {
+            methodNode.accept(writer);
+        }
+        writer.visitEnd();
+
+        final ClassNode computedNode = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(computedNode, 0);
+        int i = 0;
+        for (MethodNode methodNode : methods) {
+            classNode.methods.set(classNode.methods.indexOf(methodNode), computedNode.methods.get(i++));
+        }
+    }
+
 }
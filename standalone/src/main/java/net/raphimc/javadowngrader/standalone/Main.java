@@ -22,39 +22,55 @@ import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
 import net.lenni0451.classtransform.TransformerManager;
 import net.lenni0451.classtransform.additionalclassprovider.LazyFileClassProvider;
-import net.lenni0451.classtransform.additionalclassprovider.PathClassProvider;
 import net.lenni0451.classtransform.utils.tree.BasicClassProvider;
+import net.lenni0451.classtransform.utils.tree.IClassProvider;
 import net.raphimc.javadowngrader.impl.classtransform.JavaDowngraderTransformer;
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
 import net.raphimc.javadowngrader.impl.classtransform.util.ClassNameUtil;
+import net.raphimc.javadowngrader.impl.classtransform.util.CommonSuperClassResolver;
+import net.raphimc.javadowngrader.impl.classtransform.util.OrderedZipWriter;
+import net.raphimc.javadowngrader.impl.classtransform.util.ZipArchive;
+import net.raphimc.javadowngrader.impl.classtransform.util.ZipArchiveClassProvider;
 import net.raphimc.javadowngrader.runtime.RuntimeRoot;
 import net.raphimc.javadowngrader.standalone.progress.MultiThreadedProgressBar;
 import net.raphimc.javadowngrader.standalone.util.GeneralUtil;
+import net.raphimc.javadowngrader.standalone.util.IncrementalIndex;
 import net.raphimc.javadowngrader.util.JavaVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.net.URI;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 import static java.util.Arrays.asList;
 
 public class Main {
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
+    private static final long MIN_BUFFERED_BYTES = 16 * 1024 * 1024;
+    private static final long MAX_BUFFERED_BYTES = 256 * 1024 * 1024;
+    private static final int MAX_OPEN_OUTPUTS = 4;
 
     public static void main(String[] args) throws Throwable {
         final OptionParser parser = new OptionParser();
@@ -62,9 +78,11 @@ public class Main {
 
         final OptionSpec<File> inputLocation = parser.acceptsAll(asList("input_file", "input", "i"), "The location of the input jar file")
                 .withRequiredArg()
-                .ofType(File.class)
-                .required();
-        final OptionSpec<File> outputLocation = parser.acceptsAll(asList("output_file", "output", "o"), "The location of the output jar file")
+                .ofType(File.class);
+        final OptionSpec<File> batchLocation = parser.acceptsAll(asList("batch"), "A directory of input jar files, or a file listing one input jar per line (optionally followed by a tab and its output path), which are downgraded together")
+                .withRequiredArg()
+                .ofType(File.class);
+        final OptionSpec<File> outputLocation = parser.acceptsAll(asList("output_file", "output", "o"), "The location of the output jar file, or the output directory in batch mode")
                 .withRequiredArg()
                 .ofType(File.class)
                 .required();
@@ -79,6 +97,23 @@ public class Main {
                 .withRequiredArg()
                 .ofType(Integer.class)
                 .defaultsTo(Math.min(Runtime.getRuntime().availableProcessors(), 255));
+        final OptionSpec<Integer> compressionLevel = parser.acceptsAll(asList("compression_level", "compression-level", "c"), "The deflate level (0-9) for rewritten entries, 0 stores them uncompressed. Unchanged entries are always copied as they are")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(Deflater.DEFAULT_COMPRESSION);
+        final OptionSpec<File> cacheLocation = parser.acceptsAll(asList("cache_dir", "cache-dir"), "A directory to cache downgraded classes in, which can be shared between runs and processes")
+                .withRequiredArg()
+                .ofType(File.class);
+        final OptionSpec<Long> cacheSize = parser.acceptsAll(asList("cache_size", "cache-size"), "The maximum size of the cache in MiB")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(DowngradeCache.DEFAULT_MAX_SIZE / (1024 * 1024));
+        final OptionSpec<File> incrementalLocation = parser.acceptsAll(asList("incremental"), "A previous output jar of the same input jar. Classes which didn't change are copied from it instead of being downgraded again")
+                .withRequiredArg()
+                .ofType(File.class);
+        final OptionSpec<File> runtimeJarLocation = parser.acceptsAll(asList("runtime_jar", "runtime-jar"), "Writes the runtime classes required by all output jars into this jar instead of into each output jar")
+                .withRequiredArg()
+                .ofType(File.class);
 
         final OptionSet options;
         try {
@@ -94,22 +129,61 @@ public class Main {
             System.exit(1);
         }
 
-        final File inputFile = options.valueOf(inputLocation);
-        if (!inputFile.isFile()) {
-            LOGGER.error("Input file does not exist or is not a file");
+        if (options.has(inputLocation) == options.has(batchLocation)) {
+            LOGGER.error("Either an input file or a batch has to be specified");
+            parser.printHelpOn(System.out);
             System.exit(1);
         }
-        if (!inputFile.canRead()) {
-            LOGGER.error("Cannot read input file");
+        if (options.has(batchLocation) && options.has(incrementalLocation)) {
+            LOGGER.error("Incremental downgrading is not supported in batch mode");
+            System.exit(1);
+        }
+
+        if (options.has(compressionLevel) && (options.valueOf(compressionLevel) < Deflater.NO_COMPRESSION || options.valueOf(compressionLevel) > Deflater.BEST_COMPRESSION)) {
+            LOGGER.error("Compression level must be between 0 and 9");
             System.exit(1);
         }
 
         final File outputFile = options.valueOf(outputLocation);
-        final File parentFile = outputFile.getParentFile();
-        if (parentFile != null) {
-            outputFile.getParentFile().mkdirs();
-            if (!outputFile.getParentFile().isDirectory()) {
-                LOGGER.error("Failed to create output directory");
+        final List<Job> jobs;
+        if (options.has(batchLocation)) {
+            final File batchFile = options.valueOf(batchLocation);
+            if (!batchFile.exists()) {
+                LOGGER.error("Batch file or directory does not exist");
+                System.exit(1);
+            }
+            jobs = readBatch(batchFile, outputFile);
+            if (jobs.isEmpty()) {
+                LOGGER.error("Batch does not contain any input files");
+                System.exit(1);
+            }
+        } else {
+            jobs = Collections.singletonList(new Job(options.valueOf(inputLocation), outputFile, options.valueOf(incrementalLocation)));
+        }
+        for (final Job job : jobs) {
+            if (!job.inputFile.isFile()) {
+                LOGGER.error("Input file {} does not exist or is not a file", job.inputFile);
+                System.exit(1);
+            }
+            if (!job.inputFile.canRead()) {
+                LOGGER.error("Cannot read input file {}", job.inputFile);
+                System.exit(1);
+            }
+        }
+        final Set<Path> outputPaths = new HashSet<>();
+        for (final Job job : jobs) {
+            if (!outputPaths.add(job.outputFile.getCanonicalFile().toPath())) {
+                LOGGER.error("Multiple input files would be written to {}", job.outputFile);
+                System.exit(1);
+            }
+        }
+        if (options.has(runtimeJarLocation) && !outputPaths.add(options.valueOf(runtimeJarLocation).getCanonicalFile().toPath())) {
+            LOGGER.error("The runtime jar can't be one of the output files");
+            System.exit(1);
+        }
+        for (final Job job : jobs) {
+            if (outputPaths.contains(job.inputFile.getCanonicalFile().toPath())) {
+                LOGGER.error("Input file {} would be overwritten by an output file", job.inputFile);
                 System.exit(1);
             }
         }
@@ -117,10 +191,14 @@ public class Main {
         try {
             final long start = System.nanoTime();
             doConversion(
-                    inputFile, outputFile,
+                    jobs,
                     options.valueOf(version),
                     GeneralUtil.flatten(options.valuesOf(libraryPath)),
-                    Math.min(options.valueOf(threadCount), 255)
+                    Math.min(options.valueOf(threadCount), 255),
+                    options.valueOf(compressionLevel),
+                    options.valueOf(cacheLocation),
+                    options.valueOf(cacheSize) * 1024 * 1024,
+                    options.valueOf(runtimeJarLocation)
             );
             final long end = System.nanoTime();
             LOGGER.info(
@@ -138,19 +216,20 @@ public class Main {
     }
 
     private static void doConversion(
-            final File inputFile,
-            final File outputFile,
+            final List<Job> jobs,
             final JavaVersion targetVersion,
             List<File> libraryPath,
-            int threadCount
+            int threadCount,
+            int compressionLevel,
+            File cacheDir,
+            long cacheSize,
+            File runtimeJarFile
     ) throws Throwable {
-        LOGGER.info("Downgrading {} to Java {}", inputFile, targetVersion.getName());
-        if (outputFile.isFile() && !outputFile.canWrite()) {
-            LOGGER.error("Cannot write to {}", outputFile);
-            System.exit(1);
+        for (final Job job : jobs) {
+            job.prepare(targetVersion);
         }
-        if (Files.deleteIfExists(outputFile.toPath())) {
-            LOGGER.info("Deleted old {}", outputFile);
+        if (runtimeJarFile != null && Files.deleteIfExists(runtimeJarFile.toPath())) {
+            LOGGER.info("Deleted old {}", runtimeJarFile);
         }
 
         try (Stream<File> stream = libraryPath.stream()
@@ -173,99 +252,307 @@ public class Main {
             libraryPath = stream.collect(Collectors.toList());
         }
 
-        LOGGER.info("Opening source JAR");
-        try (FileSystem inFs = FileSystems.newFileSystem(inputFile.toPath(), null)) {
-            final Path inRoot = inFs.getRootDirectories().iterator().next();
+        LOGGER.info("Opening {} source JAR(s)", jobs.size());
+        final ForkJoinPool threadPool = new ForkJoinPool(threadCount);
+        try (LazyFileClassProvider libraryClassProvider = new LazyFileClassProvider(libraryPath, new BasicClassProvider());
+             DowngradeCache cache = cacheDir != null ? new DowngradeCache(cacheDir.toPath(), cacheSize) : null) {
+            // All input jars are on the classpath of each other, so they share one class tree for the stack map frames
+            IClassProvider classProvider = libraryClassProvider;
+            for (int i = jobs.size() - 1; i >= 0; i--) {
+                classProvider = jobs.get(i).open(classProvider, targetVersion);
+            }
+            final TransformerManager transformerManager = new TransformerManager(classProvider);
+            final Collection<String> combinedRuntimeDeps = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            int classCount = 0;
+            for (final Job job : jobs) {
+                job.collectedRuntimeDeps = runtimeJarFile != null ? combinedRuntimeDeps : job.runtimeDeps;
+                job.transformer = JavaDowngraderTransformer.builder(transformerManager)
+                        .targetVersion(targetVersion.getVersion())
+                        .classFilter(job.classProvider::hasClass)
+                        .depCollector(job.collectedRuntimeDeps::add)
+                        .cache(cache)
+                        .listener(job.index == null ? null : (className, deps, resolutions) -> job.downgradedClasses.put(className, new IncrementalIndex.ClassRecord(null, deps, resolutions)))
+                        .build();
+                classCount += (int) job.inZip.getEntries().stream().filter(Main::isDowngradedClass).count();
+            }
 
-            final Collection<String> runtimeDeps = Collections.newSetFromMap(new ConcurrentHashMap<>());
-            final TransformerManager transformerManager = new TransformerManager(
-                    new PathClassProvider(inRoot, new LazyFileClassProvider(libraryPath, new BasicClassProvider()))
-            );
-            transformerManager.addBytecodeTransformer(
-                    JavaDowngraderTransformer.builder(transformerManager)
-                            .targetVersion(targetVersion.getVersion())
-                            .classFilter(c -> Files.isRegularFile(inRoot.resolve(ClassNameUtil.toClassFilename(c))))
-                            .depCollector(runtimeDeps::add)
-                            .build()
-            );
+            final int openOutputs = Math.min(jobs.size(), MAX_OPEN_OUTPUTS);
+            final int maxBufferedBytes = (int) Math.min(Math.max(Runtime.getRuntime().maxMemory() / 4, MIN_BUFFERED_BYTES), MAX_BUFFERED_BYTES) / openOutputs;
+            LOGGER.info("Downgrading classes with {} thread(s)", threadCount);
+            try (MultiThreadedProgressBar pb = MultiThreadedProgressBar.create(
+                    new ProgressBarBuilder()
+                            .setTaskName("Downgrading")
+                            .setStyle(ProgressBarStyle.ASCII)
+                            .setInitialMax(classCount)
+                            .setUpdateIntervalMillis(100)
+            )) {
+                // The entries of the next jars are already submitted while the last entries of the previous ones are still being downgraded
+                for (int i = 0; i < jobs.size(); i++) {
+                    if (i >= openOutputs) {
+                        jobs.get(i - openOutputs).finish(runtimeJarFile == null);
+                    }
+                    jobs.get(i).submit(transformerManager, threadPool, pb, compressionLevel, maxBufferedBytes);
+                }
+                for (int i = Math.max(jobs.size() - openOutputs, 0); i < jobs.size(); i++) {
+                    jobs.get(i).finish(runtimeJarFile == null);
+                }
+            }
+            for (final Job job : jobs) {
+                job.logSummary(runtimeJarFile == null);
+            }
 
-            try (FileSystem outFs = FileSystems.newFileSystem(new URI("jar:" + outputFile.toURI()), Collections.singletonMap("create", "true"))) {
-                final Path outRoot = outFs.getRootDirectories().iterator().next();
+            if (runtimeJarFile != null) {
+                LOGGER.info("Writing {} runtime class(es) to {}", combinedRuntimeDeps.size(), runtimeJarFile);
+                try (OrderedZipWriter writer = new OrderedZipWriter(new BufferedOutputStream(Files.newOutputStream(runtimeJarFile.toPath())), compressionLevel, maxBufferedBytes)) {
+                    writeRuntimeDeps(writer, combinedRuntimeDeps);
+                    writer.finish();
+                }
+            }
+        } finally {
+            threadPool.shutdownNow();
+            Throwable failure = null;
+            for (final Job job : jobs) {
+                try {
+                    job.close();
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
 
-                LOGGER.info("Downgrading classes with {} thread(s)", threadCount);
-                final ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
-                final List<Callable<Void>> tasks;
-                final MultiThreadedProgressBar[] pb = new MultiThreadedProgressBar[1];
-                try (Stream<Path> stream = Files.walk(inRoot)) {
-                    tasks = stream.map(path -> (Callable<Void>) () -> {
-                        final String relative = ClassNameUtil.slashName(inRoot.relativize(path));
-                        pb[0].setThreadTask(relative);
-                        final Path dest = outRoot.resolve(relative);
-                        if (Files.isDirectory(path)) {
-                            Files.createDirectories(dest);
-                            pb[0].step();
-                            return null;
-                        }
-                        final Path parent = dest.getParent();
-                        if (parent != null) {
-                            Files.createDirectories(parent);
-                        }
-                        if (!relative.endsWith(".class") || relative.contains("META-INF/versions/")) {
-                            Files.copy(path, dest);
-                            pb[0].step();
-                            return null;
+    private static void writeRuntimeDeps(final OrderedZipWriter writer, final Collection<String> runtimeDeps) throws IOException {
+        for (final String runtimeDep : runtimeDeps) {
+            final String classPath = runtimeDep.concat(".class");
+            LOGGER.debug("Copying {}", classPath);
+            final byte[] data;
+            try (InputStream is = RuntimeRoot.class.getResourceAsStream("/" + classPath)) {
+                if (is == null) {
+                    LOGGER.warn("Runtime class '{}' not found! Skipping.", runtimeDep);
+                    continue;
+                }
+                data = readAllBytes(is);
+            }
+            writer.reserve(data.length).write(classPath, System.currentTimeMillis(), data);
+        }
+    }
+
+    private static List<Job> readBatch(final File batchFile, final File outputDir) throws IOException {
+        final List<Job> jobs = new ArrayList<>();
+        if (batchFile.isDirectory()) {
+            final Path root = batchFile.toPath();
+            try (Stream<Path> stream = Files.walk(root)) {
+                for (final Path path : (Iterable<Path>) stream.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(".jar")).sorted()::iterator) {
+                    jobs.add(new Job(path.toFile(), outputDir.toPath().resolve(root.relativize(path).toString()).toFile(), null));
+                }
+            }
+            return jobs;
+        }
+        for (String line : Files.readAllLines(batchFile.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final int separator = line.indexOf('\t');
+            final File inputFile = new File(separator < 0 ? line : line.substring(0, separator).trim());
+            final String output = separator < 0 ? inputFile.getName() : line.substring(separator + 1).trim();
+            jobs.add(new Job(inputFile, outputDir.toPath().resolve(output).toFile(), null));
+        }
+        return jobs;
+    }
+
+    private static boolean isDowngradedClass(final ZipArchive.Entry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(".class") && !entry.getName().contains("META-INF/versions/");
+    }
+
+    private static byte[] readAllBytes(final InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+    private static final class Job implements Closeable {
+        private final File inputFile;
+        private final File outputFile;
+        private final File previousOutputFile;
+        private final Collection<String> runtimeDeps = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final Map<String, IncrementalIndex.ClassRecord> downgradedClasses = new ConcurrentHashMap<>();
+        private final AtomicInteger reusedClasses = new AtomicInteger();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private Path previousOutput;
+        private Path movedPreviousOutput;
+        private ZipArchive inZip;
+        private ZipArchive previousZip;
+        private ZipArchiveClassProvider classProvider;
+        private IncrementalIndex index;
+        private IncrementalIndex previousIndex;
+        private Collection<String> collectedRuntimeDeps;
+        private JavaDowngraderTransformer transformer;
+        private OrderedZipWriter writer;
+
+        private Job(final File inputFile, final File outputFile, final File previousOutputFile) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.previousOutputFile = previousOutputFile;
+        }
+
+        private void prepare(final JavaVersion targetVersion) throws IOException {
+            LOGGER.info("Downgrading {} to Java {}", this.inputFile, targetVersion.getName());
+            final File parentFile = this.outputFile.getParentFile();
+            if (parentFile != null) {
+                parentFile.mkdirs();
+                if (!parentFile.isDirectory()) {
+                    LOGGER.error("Failed to create output directory {}", parentFile);
+                    System.exit(1);
+                }
+            }
+            if (this.outputFile.isFile() && !this.outputFile.canWrite()) {
+                LOGGER.error("Cannot write to {}", this.outputFile);
+                System.exit(1);
+            }
+            this.previousOutput = this.previousOutputFile != null && this.previousOutputFile.isFile() ? this.previousOutputFile.toPath() : null;
+            if (this.previousOutput != null && this.outputFile.isFile() && Files.isSameFile(this.previousOutput, this.outputFile.toPath())) {
+                // The previous output is about to be replaced, so it has to be moved out of the way until the new output has been written
+                this.movedPreviousOutput = this.outputFile.toPath().resolveSibling(this.outputFile.getName() + ".previous");
+                Files.move(this.previousOutput, this.movedPreviousOutput, StandardCopyOption.REPLACE_EXISTING);
+                this.previousOutput = this.movedPreviousOutput;
+            }
+            if (Files.deleteIfExists(this.outputFile.toPath())) {
+                LOGGER.info("Deleted old {}", this.outputFile);
+            }
+        }
+
+        private ZipArchiveClassProvider open(final IClassProvider parent, final JavaVersion targetVersion) throws IOException {
+            this.inZip = new ZipArchive(this.inputFile.toPath());
+            if (this.previousOutput != null) {
+                this.previousZip = new ZipArchive(this.previousOutput);
+            }
+            this.index = this.previousOutputFile != null ? new IncrementalIndex(targetVersion.getVersion()) : null;
+            if (this.previousZip != null) {
+                final ZipArchive.Entry indexEntry = this.previousZip.getEntry(IncrementalIndex.ENTRY_NAME);
+                this.previousIndex = indexEntry != null ? IncrementalIndex.read(this.previousZip.read(indexEntry), targetVersion.getVersion()) : null;
+                if (this.previousIndex == null) {
+                    LOGGER.warn("{} can't be used for an incremental downgrade, downgrading all classes", this.previousOutputFile);
+                }
+            } else if (this.previousOutputFile != null) {
+                LOGGER.info("{} doesn't exist yet, downgrading all classes", this.previousOutputFile);
+            }
+            this.classProvider = new ZipArchiveClassProvider(this.inZip, parent);
+            return this.classProvider;
+        }
+
+        private void submit(final TransformerManager transformerManager, final ExecutorService threadPool, final MultiThreadedProgressBar pb, final int compressionLevel, final int maxBufferedBytes) throws IOException {
+            this.writer = new OrderedZipWriter(new BufferedOutputStream(Files.newOutputStream(this.outputFile.toPath())), compressionLevel, maxBufferedBytes);
+            for (final ZipArchive.Entry entry : this.inZip.getEntries()) {
+                if (this.index != null && entry.getName().equals(IncrementalIndex.ENTRY_NAME)) {
+                    continue;
+                }
+                if (!isDowngradedClass(entry)) {
+                    this.writer.reserve(0).copy(this.inZip, entry);
+                    continue;
+                }
+
+                // Reserving blocks while too much data is waiting to be written, which bounds the memory used by queued classes
+                final OrderedZipWriter.Slot slot = this.writer.reserve(entry.getSize());
+                this.futures.add(threadPool.submit(() -> {
+                    try {
+                        pb.setThreadTask(entry.getName());
+                        final byte[] inputHash = this.index != null ? IncrementalIndex.hash(this.inZip, entry) : null;
+                        if (this.previousIndex != null) {
+                            final IncrementalIndex.ClassRecord previous = this.previousIndex.get(entry.getName());
+                            final ZipArchive.Entry previousEntry = this.previousZip.getEntry(entry.getName());
+                            if (previous != null && previousEntry != null && previous.hasInputHash(inputHash)
+                                    && new CommonSuperClassResolver(transformerManager.getClassTree(), transformerManager.getClassProvider()).resolvesSame(previous.getResolutions())) {
+                                // Neither the class nor the hierarchy used for its stack map frames changed, so the previous output is still valid
+                                this.collectedRuntimeDeps.addAll(previous.getRuntimeDeps());
+                                this.index.put(entry.getName(), previous);
+                                slot.copy(this.previousZip, previousEntry);
+                                this.reusedClasses.incrementAndGet();
+                                pb.step();
+                                return null;
+                            }
                         }
-                        final String className = ClassNameUtil.toClassName(relative);
-                        final byte[] bytecode = Files.readAllBytes(path);
+
+                        final String className = ClassNameUtil.toClassName(entry.getName());
+                        final byte[] bytecode = this.inZip.read(entry);
                         byte[] result = null;
                         try {
-                            result = transformerManager.transform(className, bytecode);
+                            result = this.transformer.transform(className, bytecode, true);
                         } catch (Exception e) {
                             LOGGER.error("Failed to transform {}", className, e);
                         }
-                        Files.write(dest, result != null ? result : bytecode);
+                        final IncrementalIndex.ClassRecord downgraded = this.downgradedClasses.remove(className);
+                        if (result != null && result != bytecode) {
+                            if (this.index != null && downgraded != null) {
+                                this.index.put(entry.getName(), new IncrementalIndex.ClassRecord(inputHash, downgraded.getRuntimeDeps(), downgraded.getResolutions()));
+                            }
+                            slot.write(entry, result);
+                        } else {
+                            slot.copy(this.inZip, entry);
+                        }
+                        pb.step();
+                    } catch (Throwable t) {
+                        this.writer.fail(t);
+                        throw t;
+                    }
+                    return null;
+                }));
+            }
+        }
 
-                        pb[0].step();
-                        return null;
-                    }).collect(Collectors.toList());
-                }
+        private void finish(final boolean includeRuntimeDeps) throws Throwable {
+            for (final Future<?> future : this.futures) {
                 try {
-                    pb[0] = MultiThreadedProgressBar.create(
-                            new ProgressBarBuilder()
-                                    .setTaskName("Downgrading")
-                                    .setStyle(ProgressBarStyle.ASCII)
-                                    .setInitialMax(tasks.size())
-                                    .setUpdateIntervalMillis(100)
-                    );
-                    threadPool.invokeAll(tasks);
-                } finally {
-                    if (pb[0] != null) {
-                        pb[0].close();
-                    }
-                }
-                threadPool.shutdown();
-                if (!threadPool.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
-                    throw new IllegalStateException("Thread pool didn't shutdown correctly");
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
                 }
+            }
+            this.futures.clear();
+            if (includeRuntimeDeps) {
+                writeRuntimeDeps(this.writer, this.runtimeDeps);
+            }
+            if (this.index != null) {
+                final byte[] data = this.index.write();
+                this.writer.reserve(data.length).write(IncrementalIndex.ENTRY_NAME, System.currentTimeMillis(), data);
+            }
+            this.writer.finish();
+            this.writer.close();
+            this.writer = null;
+            // The input stays open because the other jars may still need its classes
+            if (this.previousZip != null) {
+                this.previousZip.close();
+                this.previousZip = null;
+            }
+            if (this.movedPreviousOutput != null) {
+                Files.delete(this.movedPreviousOutput);
+                this.movedPreviousOutput = null;
+            }
+        }
 
-                LOGGER.info("Copying {} runtime class(es)", runtimeDeps.size());
-                for (final String runtimeDep : runtimeDeps) {
-                    final String classPath = runtimeDep.concat(".class");
-                    LOGGER.debug("Copying {}", classPath);
-                    try (InputStream is = RuntimeRoot.class.getResourceAsStream("/" + classPath)) {
-                        if (is == null) {
-                            LOGGER.warn("Runtime class '{}' not found! Skipping.", runtimeDep);
-                            continue;
-                        }
-                        final Path dest = outRoot.resolve(classPath);
-                        final Path parent = dest.getParent();
-                        if (parent != null) {
-                            Files.createDirectories(parent);
-                        }
-                        Files.copy(is, dest);
-                    }
-                }
-                LOGGER.info("Writing final JAR");
+        private void logSummary(final boolean includeRuntimeDeps) {
+            if (this.previousIndex != null) {
+                LOGGER.info("Reused {} unchanged class(es) from {}", this.reusedClasses.get(), this.previousOutputFile);
+            }
+            if (includeRuntimeDeps) {
+                LOGGER.info("Copied {} runtime class(es) to {}", this.runtimeDeps.size(), this.outputFile);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (ZipArchive inZip = this.inZip;
+                 ZipArchive previousZip = this.previousZip;
+                 OrderedZipWriter writer = this.writer) {
+                // Closes whatever is still open, even if closing one of them fails
             }
         }
     }
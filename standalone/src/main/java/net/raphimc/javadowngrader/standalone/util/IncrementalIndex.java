@@ -0,0 +1,164 @@
+/*
+ * This file is part of JavaDowngrader - https://github.com/RaphiMC/JavaDowngrader
+ * Copyright (C) 2023-2024 RK_01/RaphiMC and contributors
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.raphimc.javadowngrader.standalone.util;
+
+import net.raphimc.javadowngrader.impl.classtransform.cache.DowngradeCache;
+import net.raphimc.javadowngrader.impl.classtransform.util.ZipArchive;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The per-class metadata stored in an output jar to downgrade a later version of the input jar incrementally.
+ */
+public class IncrementalIndex {
+
+    public static final String ENTRY_NAME = "META-INF/javadowngrader-incremental.bin";
+    private static final int MAGIC = 0x4A444901;
+
+    private final byte[] buildFingerprint;
+    private final int targetVersion;
+    private final Map<String, ClassRecord> classes = new ConcurrentHashMap<>();
+
+    public IncrementalIndex(final int targetVersion) {
+        this(DowngradeCache.getBuildFingerprint(), targetVersion);
+    }
+
+    private IncrementalIndex(final byte[] buildFingerprint, final int targetVersion) {
+        this.buildFingerprint = buildFingerprint;
+        this.targetVersion = targetVersion;
+    }
+
+    /**
+     * @return The index or null if it was written by a different JavaDowngrader build or for a different target version
+     */
+    public static IncrementalIndex read(final byte[] data, final int targetVersion) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final byte[] buildFingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(buildFingerprint);
+            if (!Arrays.equals(buildFingerprint, DowngradeCache.getBuildFingerprint()) || in.readInt() != targetVersion) {
+                return null;
+            }
+
+            final IncrementalIndex index = new IncrementalIndex(buildFingerprint, targetVersion);
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final byte[] inputHash = new byte[in.readUnsignedByte()];
+                in.readFully(inputHash);
+                index.classes.put(name, new ClassRecord(inputHash, readStrings(in), readStrings(in)));
+            }
+            return index;
+        }
+    }
+
+    public byte[] write() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeInt(MAGIC);
+            out.writeByte(this.buildFingerprint.length);
+            out.write(this.buildFingerprint);
+            out.writeInt(this.targetVersion);
+            out.writeInt(this.classes.size());
+            for (Map.Entry<String, ClassRecord> entry : new TreeMap<>(this.classes).entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(entry.getValue().inputHash.length);
+                out.write(entry.getValue().inputHash);
+                writeStrings(out, entry.getValue().runtimeDeps);
+                writeStrings(out, entry.getValue().resolutions);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    public ClassRecord get(final String entryName) {
+        return this.classes.get(entryName);
+    }
+
+    public void put(final String entryName, final ClassRecord record) {
+        this.classes.put(entryName, record);
+    }
+
+    /**
+     * Hashes the data of an entry as it is stored in the archive, which avoids inflating it.
+     */
+    public static byte[] hash(final ZipArchive archive, final ZipArchive.Entry entry) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) entry.getMethod());
+        digest.update(archive.readRaw(entry));
+        return digest.digest();
+    }
+
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final List<String> strings = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(final DataOutputStream out, final List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    public static final class ClassRecord {
+
+        private final byte[] inputHash;
+        private final List<String> runtimeDeps;
+        private final List<String> resolutions;
+
+        public ClassRecord(final byte[] inputHash, final List<String> runtimeDeps, final List<String> resolutions) {
+            this.inputHash = inputHash;
+            this.runtimeDeps = runtimeDeps;
+            this.resolutions = resolutions;
+        }
+
+        public boolean hasInputHash(final byte[] inputHash) {
+            return Arrays.equals(this.inputHash, inputHash);
+        }
+
+        public List<String> getRuntimeDeps() {
+            return this.runtimeDeps;
+        }
+
+        public List<String> getResolutions() {
+            return this.resolutions;
+        }
+
+    }
+
+}